@@ -0,0 +1,134 @@
+package spotify.setlist.creator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import se.michaelthelin.spotify.enums.AlbumType;
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+/**
+ * A fixed corpus of setlist.fm song names and canned Spotify search results to run the benchmarks on.
+ * Modeled after actual setlists and search results: mostly plain English titles, some with diacritics,
+ * non-Latin scripts, or bracketed additions, and search results full of remasters, live versions, and unrelated songs.
+ */
+public final class BenchmarkCorpus {
+  private static final long SEED = 42;
+
+  /**
+   * Artist name, followed by songs of that artist as they're named on setlist.fm
+   */
+  private static final String[][] SETLISTS = {
+    {"Iron Maiden", "Aces High", "2 Minutes to Midnight", "The Trooper", "Fear of the Dark", "Hallowed Be Thy Name", "Run to the Hills", "The Number of the Beast", "Wasted Years"},
+    {"Rammstein", "Ramm 4", "Links 2-3-4", "Sonne", "Du hast", "Engel", "Mein Herz brennt", "Zeig dich", "Deutschland", "Ausländer", "Zick Zack"},
+    {"Björk", "Jóga", "Hyperballad", "Army of Me", "Bachelorette", "Hunter", "Isobel"},
+    {"Sigur Rós", "Svefn-g-englar", "Glósóli", "Hoppípolla", "Sæglópur", "Starálfur", "Untitled #8"},
+    {"Los Fabulosos Cadillacs", "Matador", "Vasos vacíos", "El satánico Dr. Cadillac", "Carnaval toda la vida", "Siguiendo la luna"},
+    {"Stromae", "Alors on danse", "Papaoutai", "Formidable", "Tous les mêmes", "Santé", "L'enfer"},
+    {"BABYMETAL", "ギミチョコ!!", "メギツネ", "ヘドバンギャー!!", "KARATE", "イジメ、ダメ、ゼッタイ"},
+    {"Kino", "Группа крови", "Звезда по имени Солнце", "Кукушка", "Хочу перемен!", "Пачка сигарет"},
+    {"Queen", "Bohemian Rhapsody", "We Will Rock You", "We Are the Champions", "Don't Stop Me Now", "Love of My Life", "Killer Queen / Bicycle Race (Medley)"},
+    {"Metallica", "Enter Sandman", "Master of Puppets", "Nothing Else Matters", "Seek & Destroy", "One", "Fade to Black", "[Generic Track]"},
+    {"Mötley Crüe", "Kickstart My Heart", "Dr. Feelgood", "Shout at the Devil", "Home Sweet Home", "Girls, Girls, Girls"},
+    {"Los Tigres del Norte", "La jaula de oro", "Contrabando y traición", "Jefe de jefes", "Señor locutor"}
+  };
+
+  private static final String[] TRACK_NAME_SUFFIXES = {
+    "", "", "", " - Remastered 2015", " - 2009 Remaster", " (Live)", " - Live at Wembley Stadium", " (Demo)", " - Single Version", " (Acoustic)"
+  };
+
+  private static final String[] OTHER_ARTISTS = {"Dream Theater", "Hayseed Dixie", "Apocalyptica", "Tribute Band", "Various Artists"};
+
+  private final List<Song> songs;
+
+  private BenchmarkCorpus() {
+    Random random = new Random(SEED);
+    this.songs = new ArrayList<>();
+    for (String[] setlist : SETLISTS) {
+      String artistName = setlist[0];
+      for (int i = 1; i < setlist.length; i++) {
+        songs.add(new Song(setlist[i], artistName, createSearchResults(setlist, i, random)));
+      }
+    }
+  }
+
+  public static BenchmarkCorpus create() {
+    return new BenchmarkCorpus();
+  }
+
+  public List<Song> getSongs() {
+    return songs;
+  }
+
+  /**
+   * Roughly what a Spotify search for a song returns: a few versions of the song itself (remasters, live versions,
+   * covers by other artists), mixed with other songs of the same artist.
+   */
+  private static List<Track> createSearchResults(String[] setlist, int songIndex, Random random) {
+    String artistName = setlist[0];
+    String songName = setlist[songIndex];
+    List<Track> tracks = new ArrayList<>();
+    int versions = 2 + random.nextInt(4);
+    for (int i = 0; i < versions; i++) {
+      String suffix = TRACK_NAME_SUFFIXES[random.nextInt(TRACK_NAME_SUFFIXES.length)];
+      String trackArtistName = random.nextInt(5) == 0 ? OTHER_ARTISTS[random.nextInt(OTHER_ARTISTS.length)] : artistName;
+      AlbumType albumType = random.nextBoolean() ? AlbumType.ALBUM : AlbumType.COMPILATION;
+      tracks.add(createTrack(songName + suffix, trackArtistName, albumType, 1980 + random.nextInt(40)));
+    }
+    int otherSongs = 3 + random.nextInt(5);
+    for (int i = 0; i < otherSongs; i++) {
+      String otherSongName = setlist[1 + random.nextInt(setlist.length - 1)];
+      tracks.add(createTrack(otherSongName, artistName, AlbumType.ALBUM, 1980 + random.nextInt(40)));
+    }
+    return tracks;
+  }
+
+  private static Track createTrack(String name, String artistName, AlbumType albumType, int releaseYear) {
+    ArtistSimplified artist = new ArtistSimplified.Builder()
+      .setId(Integer.toHexString(artistName.hashCode()))
+      .setName(artistName)
+      .build();
+    AlbumSimplified album = new AlbumSimplified.Builder()
+      .setId(Integer.toHexString((artistName + releaseYear).hashCode()))
+      .setName(artistName + " " + releaseYear)
+      .setAlbumType(albumType)
+      .setArtists(artist)
+      .setReleaseDate(releaseYear + "-01-01")
+      .build();
+    return new Track.Builder()
+      .setId(Integer.toHexString((name + artistName + releaseYear).hashCode()))
+      .setName(name)
+      .setArtists(artist)
+      .setAlbum(album)
+      .build();
+  }
+
+  public static class Song {
+    private final String songName;
+    private final String artistName;
+    private final List<Track> searchResults;
+
+    Song(String songName, String artistName, List<Track> searchResults) {
+      this.songName = songName;
+      this.artistName = artistName;
+      this.searchResults = searchResults;
+    }
+
+    public String getSongName() {
+      return songName;
+    }
+
+    public String getArtistName() {
+      return artistName;
+    }
+
+    /**
+     * @return the canned Spotify search results for this song
+     */
+    public List<Track> getSearchResults() {
+      return searchResults;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package spotify.setlist.creator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import spotify.setlist.util.NormalizedText;
+import spotify.setlist.util.SetlistUtils;
+
+/**
+ * The string helpers every song/track comparison goes through. Each invocation runs over the entire corpus,
+ * i.e. every song name against every track name of its search results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextNormalizationBenchmark {
+  private List<BenchmarkCorpus.Song> songs;
+
+  @Setup
+  public void setup() {
+    songs = BenchmarkCorpus.create().getSongs();
+  }
+
+  @Benchmark
+  public void purifyString(Blackhole blackhole) {
+    for (BenchmarkCorpus.Song song : songs) {
+      blackhole.consume(SetlistUtils.purifyString(song.getSongName()));
+      for (Track track : song.getSearchResults()) {
+        blackhole.consume(SetlistUtils.purifyString(track.getName()));
+      }
+    }
+  }
+
+  @Benchmark
+  public void extractCoreTitle(Blackhole blackhole) {
+    for (BenchmarkCorpus.Song song : songs) {
+      blackhole.consume(SetlistUtils.extractCoreTitle(song.getSongName(), false));
+      blackhole.consume(SetlistUtils.extractCoreTitle(song.getSongName(), true));
+    }
+  }
+
+  @Benchmark
+  public void containsIgnoreCaseNormalized(Blackhole blackhole) {
+    for (BenchmarkCorpus.Song song : songs) {
+      for (Track track : song.getSearchResults()) {
+        blackhole.consume(SetlistUtils.containsIgnoreCaseNormalized(track.getName(), song.getSongName()));
+      }
+    }
+  }
+
+  @Benchmark
+  public void isStartContained(Blackhole blackhole) {
+    for (BenchmarkCorpus.Song song : songs) {
+      for (Track track : song.getSearchResults()) {
+        blackhole.consume(SetlistUtils.isStartContained(track.getName(), song.getSongName()));
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #containsIgnoreCaseNormalized} and {@link #isStartContained} combined, but with the normalized
+   * variants of each name computed once per search, as done during the actual matching.
+   */
+  @Benchmark
+  public void normalizedTextComparisons(Blackhole blackhole) {
+    for (BenchmarkCorpus.Song song : songs) {
+      NormalizedText songName = new NormalizedText(song.getSongName());
+      for (Track track : song.getSearchResults()) {
+        NormalizedText trackName = new NormalizedText(track.getName());
+        blackhole.consume(trackName.containsIgnoreCaseNormalized(songName));
+        blackhole.consume(trackName.isStartContained(songName));
+      }
+    }
+  }
+}
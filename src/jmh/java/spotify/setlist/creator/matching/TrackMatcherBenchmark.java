@@ -0,0 +1,86 @@
+package spotify.setlist.creator.matching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import spotify.setlist.creator.BenchmarkCorpus;
+import spotify.setlist.data.Setlist;
+import spotify.setlist.util.NormalizedText;
+
+/**
+ * Picking the best track out of the search results of each song in the corpus. This is the work done
+ * for every single song of a setlist (more than once, if a strict or cover search is needed).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackMatcherBenchmark {
+  private TrackMatcher trackMatcher;
+  private List<BenchmarkCorpus.Song> songs;
+  private List<Setlist.Song> setlistSongs;
+  private List<List<TrackCandidate>> preparedCandidates;
+
+  @Setup
+  public void setup() {
+    trackMatcher = new TrackMatcher();
+    songs = BenchmarkCorpus.create().getSongs();
+    setlistSongs = new ArrayList<>();
+    preparedCandidates = new ArrayList<>();
+    for (int i = 0; i < songs.size(); i++) {
+      BenchmarkCorpus.Song song = songs.get(i);
+      setlistSongs.add(new Setlist.Song(i, song.getSongName(), song.getArtistName(), song.getArtistName(), null, false, false, false));
+      preparedCandidates.add(TrackCandidate.of(song.getSearchResults()));
+    }
+  }
+
+  /**
+   * Full matching, including the normalization of the song and all search results.
+   */
+  @Benchmark
+  public void findBestMatch(Blackhole blackhole) {
+    for (int i = 0; i < songs.size(); i++) {
+      BenchmarkCorpus.Song song = songs.get(i);
+      SongQuery songQuery = new SongQuery(song.getSongName(), song.getArtistName());
+      blackhole.consume(trackMatcher.findBestMatch(setlistSongs.get(i), songQuery, TrackCandidate.of(song.getSearchResults())));
+    }
+  }
+
+  /**
+   * Only the scoring pass, with the search results already normalized.
+   */
+  @Benchmark
+  public void matchPrepared(Blackhole blackhole) {
+    for (int i = 0; i < songs.size(); i++) {
+      BenchmarkCorpus.Song song = songs.get(i);
+      SongQuery songQuery = new SongQuery(song.getSongName(), song.getArtistName());
+      blackhole.consume(trackMatcher.match(songQuery, preparedCandidates.get(i)));
+    }
+  }
+
+  @Benchmark
+  public void isApproximateMatch(Blackhole blackhole) {
+    for (BenchmarkCorpus.Song song : songs) {
+      NormalizedText songName = new NormalizedText(song.getSongName());
+      for (Track track : song.getSearchResults()) {
+        blackhole.consume(trackMatcher.isApproximateMatch(songName, new NormalizedText(track.getName())));
+      }
+    }
+  }
+}
@@ -1,27 +1,45 @@
 package spotify.setlist;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.ModelAndView;
 
 import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+import spotify.setlist.creator.misc.ConversionResultCache;
 import spotify.setlist.creator.misc.CounterManager;
+import spotify.setlist.data.ConversionKey;
+import spotify.setlist.data.SetlistCreationResponse;
+import spotify.setlist.util.SetlistUtils;
+import spotify.setlist.util.StatsProvider;
 
 @RestController
 public class SetlistController {
   private final CounterManager counterManager;
+  private final ConversionResultCache conversionResultCache;
+  private final List<StatsProvider> statsProviders;
 
   private final long bootTime;
 
-  SetlistController(CounterManager counterManager) {
+  SetlistController(CounterManager counterManager, ConversionResultCache conversionResultCache, List<StatsProvider> statsProviders) {
     this.counterManager = counterManager;
+    this.conversionResultCache = conversionResultCache;
+    this.statsProviders = statsProviders;
     this.bootTime = System.currentTimeMillis();
   }
 
@@ -38,6 +56,40 @@ public class SetlistController {
     return ResponseEntity.ok(counterManager.getSetlistCounterFormatted());
   }
 
+  /**
+   * Get the result of a recent conversion of the given setlist with the given options, if there is one.
+   * Responses carry ETag and Last-Modified headers, so they can be cached by browsers and proxies.
+   *
+   * @param setlistFmId the setlist.fm ID
+   * @param options the options, in the same comma-separated format as used by the converter
+   * @return the cached SetlistCreationResponse, or 404 if this setlist hasn't been converted recently
+   */
+  @CrossOrigin
+  @GetMapping("/setlist/{setlistFmId}")
+  public ResponseEntity<SetlistCreationResponse> cachedConversion(@PathVariable String setlistFmId, @RequestParam(defaultValue = "") String options) {
+    ConversionKey conversionKey = new ConversionKey(setlistFmId, SetlistUtils.getOptionsFromUrl(options));
+    Optional<ConversionResultCache.CachedConversion> cachedConversion = conversionResultCache.get(conversionKey);
+    if (cachedConversion.isEmpty()) {
+      return ResponseEntity.notFound().build();
+    }
+    ConversionResultCache.CachedConversion conversion = cachedConversion.get();
+    long maxAgeSeconds = Math.max(0, (conversion.getExpiresAt() - System.currentTimeMillis()) / 1000);
+    return ResponseEntity.ok()
+      .eTag(conversion.getETag())
+      .lastModified(conversion.getCreatedAt())
+      .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+      .body(conversion.getResponse());
+  }
+
+  @RequestMapping("/stats")
+  public ResponseEntity<Map<String, Object>> stats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    for (StatsProvider statsProvider : statsProviders) {
+      stats.put(statsProvider.getStatsName(), statsProvider.getStats());
+    }
+    return ResponseEntity.ok(stats);
+  }
+
   @ExceptionHandler(NotFoundException.class)
   public ResponseEntity<String> handleNotFoundException(NotFoundException e) {
     return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
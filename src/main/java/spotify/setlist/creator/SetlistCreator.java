@@ -2,17 +2,24 @@ package spotify.setlist.creator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-import org.apache.commons.text.similarity.LevenshteinDistance;
+import javax.annotation.PreDestroy;
+
 import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.WebSocketSession;
 
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
@@ -24,13 +31,26 @@ import spotify.api.SpotifyCall;
 import spotify.api.events.SpotifyApiException;
 import spotify.api.events.SpotifyApiLoggedInEvent;
 import spotify.services.PlaylistService;
+import spotify.setlist.creator.matching.SearchQueryPlanner;
+import spotify.setlist.creator.matching.TrackMatcher;
+import spotify.setlist.creator.misc.ArtistIdentityCache;
+import spotify.setlist.creator.misc.ConversionResultCache;
+import spotify.setlist.creator.misc.ConversionStageTimer;
 import spotify.setlist.creator.misc.CounterManager;
 import spotify.setlist.creator.misc.CreationCache;
+import spotify.setlist.creator.misc.RetryPolicy;
+import spotify.setlist.creator.misc.SpotifyRateLimiter;
+import spotify.setlist.creator.misc.TrackSearchCache;
+import spotify.setlist.data.ConversionKey;
 import spotify.setlist.data.Setlist;
 import spotify.setlist.data.SetlistCreationOptions;
 import spotify.setlist.data.SetlistCreationResponse;
+import spotify.setlist.data.SongLookupKey;
 import spotify.setlist.data.TrackSearchResult;
 import spotify.setlist.setlistfm.SetlistFmApi;
+import spotify.setlist.setlistfm.SetlistFmBusyException;
+import spotify.setlist.util.ConversionProgress;
+import spotify.setlist.util.NormalizedText;
 import spotify.setlist.util.SetlistUtils;
 import spotify.spring.SpringPortConfig;
 import spotify.util.SpotifyLogger;
@@ -43,20 +63,55 @@ public class SetlistCreator {
   private static final String SETLIST_FM_API_TOKEN_ENV = "setlist_bot.setlist_fm_api_token";
   private static final String SETLIST_FM_DEBUG_ENV = "setlist_bot.debug_mode";
 
-  private static final int PLAYLIST_ADD_MAX_ATTEMPTS = 10;
+  private static final String SEARCH_CONCURRENCY_ENV = "setlist_bot.search_concurrency";
+  private static final int DEFAULT_SEARCH_CONCURRENCY = 4;
+  private static final String MAX_CONCURRENT_REQUESTS_ENV = "setlist_bot.max_concurrent_requests";
+  private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 3;
+
+  /**
+   * Stages of a conversion that run next to the song search (prefetching existing playlists and fetching the setlist artist)
+   */
+  private static final int PREFETCH_STAGES_PER_CONVERSION = 2;
+
+  private static final String STAGE_FETCH_SETLIST = "fetchSetlist";
+  private static final String STAGE_PREFETCH_PLAYLISTS = "prefetchPlaylists";
+  private static final String STAGE_FETCH_ARTIST = "fetchArtist";
+  private static final String STAGE_SEARCH_SONGS = "searchSongs";
+  private static final String STAGE_FIND_EXISTING_PLAYLIST = "findExistingPlaylist";
+  private static final String STAGE_CREATE_PLAYLIST = "createPlaylist";
+  private static final String STAGE_ADD_TRACKS = "addTracks";
+  private static final String STAGE_ATTACH_IMAGE = "attachImage";
 
   private final CreationCache creationCache;
   private final CounterManager counterManager;
+  private final TrackSearchCache trackSearchCache;
+  private final TrackMatcher trackMatcher;
+  private final SearchQueryPlanner searchQueryPlanner;
+  private final ArtistIdentityCache artistIdentityCache;
+  private final ConversionStageTimer conversionStageTimer;
+  private final ConversionResultCache conversionResultCache;
+  private final SetlistFmApi setlistFmApi;
+  private final SpotifyRateLimiter spotifyRateLimiter;
+  private final RetryPolicy retryPolicy;
   private final SpotifyApi spotifyApi;
   private final PlaylistService playlistService;
   private final SpotifyLogger logger;
   private final Environment environment;
   private final int port;
-
-  private String setlistFmApiToken;
+  private final int searchConcurrency;
+  private final ThreadPoolExecutor workerExecutor;
 
   SetlistCreator(CreationCache creationCache,
       CounterManager counterManager,
+      TrackSearchCache trackSearchCache,
+      TrackMatcher trackMatcher,
+      SearchQueryPlanner searchQueryPlanner,
+      ArtistIdentityCache artistIdentityCache,
+      ConversionStageTimer conversionStageTimer,
+      ConversionResultCache conversionResultCache,
+      SetlistFmApi setlistFmApi,
+      SpotifyRateLimiter spotifyRateLimiter,
+      RetryPolicy retryPolicy,
       SpotifyApi spotifyApi,
       PlaylistService playlistService,
       SpotifyLogger spotifyLogger,
@@ -64,21 +119,42 @@ public class SetlistCreator {
       SpringPortConfig springPortConfig) {
     this.creationCache = creationCache;
     this.counterManager = counterManager;
+    this.trackSearchCache = trackSearchCache;
+    this.trackMatcher = trackMatcher;
+    this.searchQueryPlanner = searchQueryPlanner;
+    this.artistIdentityCache = artistIdentityCache;
+    this.conversionStageTimer = conversionStageTimer;
+    this.conversionResultCache = conversionResultCache;
+    this.setlistFmApi = setlistFmApi;
+    this.spotifyRateLimiter = spotifyRateLimiter;
+    this.retryPolicy = retryPolicy;
     this.spotifyApi = spotifyApi;
     this.playlistService = playlistService;
     this.logger = spotifyLogger;
     this.environment = environment;
     this.port = springPortConfig.getPort();
+    this.searchConcurrency = Math.max(1, environment.getProperty(SEARCH_CONCURRENCY_ENV, Integer.class, DEFAULT_SEARCH_CONCURRENCY));
+
+    // Every running conversion searches on its own thread plus (searchConcurrency - 1) workers, next to its prefetch stages.
+    // With this many threads, a running conversion never has to wait for one. Anything beyond that waits in the queue.
+    int maxConcurrentConversions = Math.max(1, environment.getProperty(MAX_CONCURRENT_REQUESTS_ENV, Integer.class, DEFAULT_MAX_CONCURRENT_REQUESTS));
+    int workerThreads = maxConcurrentConversions * (searchConcurrency - 1 + PREFETCH_STAGES_PER_CONVERSION);
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.workerExecutor = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "conversion-worker-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.workerExecutor.allowCoreThreadTimeOut(true);
   }
 
   @EventListener(SpotifyApiLoggedInEvent.class)
   void init() {
-    String setlistFmApiToken = environment.getProperty(SETLIST_FM_API_TOKEN_ENV);
-    if (setlistFmApiToken == null || setlistFmApiToken.isBlank()) {
+    int setlistFmApiKeyCount = setlistFmApi.getApiKeyCount();
+    if (setlistFmApiKeyCount == 0) {
       throw new IllegalStateException(SETLIST_FM_API_TOKEN_ENV + " environment variable is missing!");
     } else {
-      this.setlistFmApiToken = setlistFmApiToken;
-      logger.info("setlist.fm API token set!");
+      logger.info("setlist.fm API token set! (" + setlistFmApiKeyCount + " key(s))");
     }
 
     String debugModeEnv = environment.getProperty(SETLIST_FM_DEBUG_ENV);
@@ -93,30 +169,68 @@ public class SetlistCreator {
     logger.info("Booted up! http://localhost:" + port);
   }
 
+  @PreDestroy
+  void shutdown() {
+    workerExecutor.shutdownNow();
+  }
+
   /**
    * Create a setlist playlist from the given setlist.fm ID
    *
    * @param setlistFmId the setlist.fm ID
    * @param options any potential option flags
+   * @param progress the receiver of progress messages
    * @return a SetlistCreationResponse with the result
    * @throws NotFoundException if either the setlist or any of its songs couldn't be found
+   * @throws SetlistFmBusyException if setlist.fm is throttling all requests right now
    */
-  public SetlistCreationResponse convertSetlistToPlaylist(String setlistFmId, SetlistCreationOptions options, WebSocketSession session) throws NotFoundException {
+  public SetlistCreationResponse convertSetlistToPlaylist(String setlistFmId, SetlistCreationOptions options, ConversionProgress progress) throws NotFoundException {
     long start = System.currentTimeMillis();
 
+    // Requests are usually answered from the cache before they're even queued,
+    // this only catches the ones that were queued before the result was stored
+    ConversionKey conversionKey = new ConversionKey(setlistFmId, options);
+    Optional<SetlistCreationResponse> cachedConversion = getCachedConversion(setlistFmId, options);
+    if (cachedConversion.isPresent()) {
+      return cachedConversion.get();
+    }
+
     // Find the setlist.fm setlist
-    SetlistUtils.attemptSendMessage(session, "Fetching data from setlist.fm...");
-    Setlist setlist = SetlistFmApi.getSetlist(setlistFmId, setlistFmApiToken);
+    progress.send("Fetching data from setlist.fm...");
+    ConversionStageTimer.Timings timings = conversionStageTimer.start();
+    Setlist setlist;
+    try {
+      setlist = setlistFmApi.getSetlist(setlistFmId);
+    } catch (SetlistFmBusyException e) {
+      logger.warning(e.getMessage() + " (" + e.getCause().getMessage() + ")");
+      progress.send("setlist.fm is busy right now, please try again shortly.");
+      throw e;
+    }
+    timings.record(STAGE_FETCH_SETLIST, System.currentTimeMillis() - start);
     String setlistName = setlist.toString();
 
+    // Everything that only depends on the setlist itself (and not on the songs found) runs alongside the song search
+    CompletableFuture<Map<String, Playlist>> prefetchedPlaylists = timings.timeAsync(STAGE_PREFETCH_PLAYLISTS,
+      () -> prefetchExistingPlaylists(setlistName), workerExecutor);
+    CompletableFuture<Optional<Artist>> setlistArtist = options.isAttachImage() && !debugMode
+      ? timings.timeAsync(STAGE_FETCH_ARTIST, () -> fetchSetlistArtist(setlist), workerExecutor)
+      : CompletableFuture.completedFuture(Optional.empty());
+
     // Search for each song on Spotify
-    List<TrackSearchResult> spotifySearchResults = findSongsOnSpotify(setlist, options, session);
+    List<TrackSearchResult> spotifySearchResults;
+    try {
+      spotifySearchResults = timings.time(STAGE_SEARCH_SONGS, () -> findSongsOnSpotify(setlist, options, progress));
+    } catch (RuntimeException e) {
+      cancelStages(prefetchedPlaylists, setlistArtist);
+      throw e;
+    }
     int totalSetlistSongsCount = setlist.getSongs().size();
     long searchResultCount = spotifySearchResults.stream()
       .filter(TrackSearchResult::hasResult)
       .count();
     if (spotifySearchResults.isEmpty() || searchResultCount == 0 || searchResultCount < totalSetlistSongsCount / 3) {
-      SetlistUtils.attemptSendMessage(session, "Operation failed.");
+      cancelStages(prefetchedPlaylists, setlistArtist);
+      progress.send("Operation failed.");
       throw new NotFoundException("No songs found: " + setlistFmId);
     }
 
@@ -127,249 +241,234 @@ public class SetlistCreator {
 
     // Search for existing playlists that match the name and tracks
     // If there is a match, return that instead one instead of creating an entirely new playlist
-    SetlistUtils.attemptSendMessage(session, "Looking for existing playlist...");
-    Optional<Playlist> existingSetlistPlaylist = creationCache.searchForExistingSetlistPlaylist(setlistName, spotifySearchResultsFiltered);
+    progress.send("Looking for existing playlist...");
+    Optional<Playlist> existingSetlistPlaylist = timings.time(STAGE_FIND_EXISTING_PLAYLIST,
+      () -> creationCache.searchForExistingSetlistPlaylist(setlistName, spotifySearchResultsFiltered, prefetchedPlaylists.join()));
     if (existingSetlistPlaylist.isPresent()) {
       Playlist existingPlaylist = existingSetlistPlaylist.get();
       long timeTaken = System.currentTimeMillis() - start;
       SetlistCreationResponse setlistCreationResponse = new SetlistCreationResponse(setlist, options, existingPlaylist.getId(), spotifySearchResults, timeTaken, true);
-      logger.info(String.format("Existing setlist requested: %s - %s", existingPlaylist.getName(), setlistCreationResponse.getPlaylistUrl()));
+      logger.info(String.format("Existing setlist requested: %s - %s [%s]", existingPlaylist.getName(), setlistCreationResponse.getPlaylistUrl(), timings));
+      conversionResultCache.put(conversionKey, setlistCreationResponse);
       return setlistCreationResponse;
     }
 
     // Create the playlist on Spotify with appropriate name, description, and image
-    SetlistUtils.attemptSendMessage(session, "Creating new playlist...");
+    progress.send("Creating new playlist...");
     String description = SetlistUtils.assembleDescription(setlist);
-    Playlist targetPlaylist = playlistService.createPlaylist(setlistName, description, true);
-    SetlistUtils.attemptSendMessage(session, "Adding tracks to playlist...");
+    Playlist targetPlaylist = timings.time(STAGE_CREATE_PLAYLIST,
+      () -> spotifyRateLimiter.execute(() -> playlistService.createPlaylist(setlistName, description, true)));
+    progress.send("Adding tracks to playlist...");
     List<Track> tracksToAdd = spotifySearchResultsFiltered.stream().map(TrackSearchResult::getSearchResult).collect(Collectors.toList());
 
-    if (!addTracksWithRetry(targetPlaylist, tracksToAdd)) {
+    if (!timings.time(STAGE_ADD_TRACKS, () -> addTracksWithRetry(targetPlaylist, tracksToAdd))) {
       // Failed to add tracks for whatever reason, delete playlist again and return an error
-      playlistService.deletePlaylist(targetPlaylist);
-      SetlistUtils.attemptSendMessage(session, "Failed to add tracks to playlist.");
+      cancelStages(setlistArtist);
+      retryPolicy.run(RetryPolicy.Operation.DELETE_PLAYLIST, () -> spotifyRateLimiter.run(() -> playlistService.deletePlaylist(targetPlaylist)));
+      progress.send("Failed to add tracks to playlist.");
       throw new NotFoundException("Failed to add tracks to playlist: " + targetPlaylist.getName());
     }
 
     // Attach image
     if (options.isAttachImage() && !debugMode) {
-      SetlistUtils.attemptSendMessage(session, "Attaching image...");
-      tracksToAdd.stream()
-        .filter(t -> SpotifyUtils.getFirstArtistName(t).equals(setlist.getArtistName()))
-        .findFirst()
-        .ifPresent(t -> {
-          ArtistSimplified artist = t.getArtists()[0];
-          Artist fullArtist = SpotifyCall.execute(spotifyApi.getArtist(artist.getId()));
-          attachArtistImage(fullArtist, targetPlaylist);
-        });
+      progress.send("Attaching image...");
+      timings.time(STAGE_ATTACH_IMAGE, () -> {
+        // Only trust the artist resolved upfront if it's actually the artist of any of the tracks that were added,
+        // otherwise take the artist of the matching tracks instead
+        Set<String> addedArtistIds = tracksToAdd.stream()
+          .flatMap(t -> Arrays.stream(t.getArtists()))
+          .map(ArtistSimplified::getId)
+          .collect(Collectors.toSet());
+        Optional<Artist> artist = setlistArtist.join()
+          .filter(fullArtist -> addedArtistIds.contains(fullArtist.getId()));
+        if (artist.isEmpty()) {
+          artist = tracksToAdd.stream()
+            .filter(t -> SpotifyUtils.getFirstArtistName(t).equals(setlist.getArtistName()))
+            .findFirst()
+            .map(t -> getArtist(t.getArtists()[0].getId()));
+        }
+        artist.ifPresent(fullArtist -> attachArtistImage(fullArtist, targetPlaylist));
+        return null;
+      });
     }
 
     // Log and return the result
-    SetlistUtils.attemptSendMessage(session, "Almost there...");
+    progress.send("Almost there...");
     long timeTaken = System.currentTimeMillis() - start;
     SetlistCreationResponse setlistCreationResponse = new SetlistCreationResponse(setlist, options, targetPlaylist.getId(), spotifySearchResults, timeTaken, false);
-    logger.info(String.format("New setlist created: %s - %s", targetPlaylist.getName(), setlistCreationResponse.getPlaylistUrl()));
+    logger.info(String.format("New setlist created: %s - %s [%s]", targetPlaylist.getName(), setlistCreationResponse.getPlaylistUrl(), timings));
     counterManager.incrementSetlistCounter();
     if (debugMode) {
-      SpotifyCall.execute(spotifyApi.unfollowPlaylist(targetPlaylist.getId()));
+      spotifyRateLimiter.execute(() -> SpotifyCall.execute(spotifyApi.unfollowPlaylist(targetPlaylist.getId())));
       logger.warning("Debug playlist deleted!");
     } else {
-      creationCache.addSetlistToCache(setlistName, targetPlaylist.getId());
+      List<String> trackIds = tracksToAdd.stream().map(Track::getId).collect(Collectors.toList());
+      creationCache.addSetlistToCache(setlistName, targetPlaylist.getId(), trackIds);
+      conversionResultCache.put(conversionKey, setlistCreationResponse);
     }
     return setlistCreationResponse;
   }
 
-  private boolean addTracksWithRetry(Playlist targetPlaylist, List<Track> tracksToAdd) {
-    // Recently, the bot randomly received "Insufficient client scope" exceptions for seemingly no reason.
-    // The scope is there and most of the time it works fine, but sometimes it just goes "lol screw you" and fails.
-    // This should hopefully mitigate some of these issues, without getting stuck indefinitely.
-    SpotifyUtils.sneakySleep(1000);
-    for (int i = PLAYLIST_ADD_MAX_ATTEMPTS; i > 0; i--) {
-      try {
-        playlistService.addTracksToPlaylist(targetPlaylist, tracksToAdd);
-        if (i < PLAYLIST_ADD_MAX_ATTEMPTS) {
-          logger.warning("Had to retry adding tracks to playlist " + (PLAYLIST_ADD_MAX_ATTEMPTS - i) + " time(s) "
-          + "for playlist: " + targetPlaylist.getName());
-        }
-        return true;
-      } catch (SpotifyApiException e) {
-        SpotifyUtils.sneakySleep(1000);
-      }
-    }
-    return false;
+  /**
+   * Answer a repeated request of the same setlist with the same options directly from the conversion result cache.
+   *
+   * @param setlistFmId the setlist.fm ID
+   * @param options the option flags
+   * @return the cached SetlistCreationResponse, or empty if this setlist hasn't been converted recently
+   */
+  public Optional<SetlistCreationResponse> getCachedConversion(String setlistFmId, SetlistCreationOptions options) {
+    long start = System.currentTimeMillis();
+    return conversionResultCache.get(new ConversionKey(setlistFmId, options)).map(cachedConversion -> {
+      SetlistCreationResponse cachedResponse = cachedConversion.getResponse();
+      long timeTaken = System.currentTimeMillis() - start;
+      SetlistCreationResponse setlistCreationResponse = new SetlistCreationResponse(cachedResponse.getSetlist(), options, cachedResponse.getPlaylistId(), cachedResponse.getSearchResults(), timeTaken, true);
+      logger.info(String.format("Existing setlist requested (cached): %s - %s", cachedResponse.getSetlist(), setlistCreationResponse.getPlaylistUrl()));
+      return setlistCreationResponse;
+    });
   }
 
-  private List<TrackSearchResult> findSongsOnSpotify(Setlist setlist, SetlistCreationOptions options, WebSocketSession session) {
-    // This was originally done using SpotifyOptimizedExecutorService,
-    // but ironically enough, it is significantly faster in a simple for-loop,
-    // as it's less likely to cause 429 Too Many Requests errors this way.
-    List<Setlist.Song> songs = setlist.getSongs();
-    List<TrackSearchResult> trackSearchResults = new ArrayList<>();
-    for (int i = 0; i < songs.size(); i++) {
-      Setlist.Song song = songs.get(i);
-      SetlistUtils.attemptSendMessage(session, String.format("Searching for the tracks on Spotify... (%d of %d)", i + 1, songs.size()));
-      boolean notSkipped = !song.isTape() && !song.isMedleyPart()
-        || song.isTape() && (song.isCover() ? options.isIncludeTapesForeign() : options.isIncludeTapesMain())
-        || song.isMedleyPart() && options.isIncludeMedleys();
-      if (notSkipped) {
-        TrackSearchResult trackSearchResult = searchTrack(song, options.isIncludeCoverOriginals());
-        trackSearchResults.add(trackSearchResult);
-      } else {
-        trackSearchResults.add(TrackSearchResult.skipped(song));
-      }
+  /**
+   * Cancel stages that were started alongside the song search but won't be needed anymore, as the conversion failed.
+   * Stages that haven't started yet won't run at all, running ones are left to finish on their own.
+   */
+  private static void cancelStages(CompletableFuture<?>... stages) {
+    for (CompletableFuture<?> stage : stages) {
+      stage.cancel(true);
     }
-    return trackSearchResults;
   }
 
-  // visible for testing
-  TrackSearchResult searchTrack(Setlist.Song song, boolean includeCoverOriginals) {
-    String queryArtistName = song.isTape() ? song.getOriginalArtistName() : song.getArtistName();
-    String songName = song.getSongName();
-    String songNameCore = SetlistUtils.extractCoreTitle(songName, false);
-
-    String searchQueryLoose = buildSearchQuery(songNameCore, queryArtistName, false);
-    List<Track> searchResultsLoose = Arrays.asList(SpotifyCall.execute(spotifyApi.searchTracks(searchQueryLoose)).getItems());
-    List<Track> searchResults = searchResultsLoose;
-
-    if (!songName.equalsIgnoreCase(songNameCore) || !SetlistUtils.isPureText(songName, queryArtistName)) {
-      // If we already know the search params are not going to cause any headaches,
-      // there's no need to run a second API call to Spotify.
-      // Otherwise, make the second strict request, just in case.
-      String songNameCorePurified = SetlistUtils.extractCoreTitle(songName, true);
-      String searchQueryStrict = buildSearchQuery(songNameCorePurified, queryArtistName, true);
-      List<Track> searchResultsStrict = Arrays.asList(SpotifyCall.execute(spotifyApi.searchTracks(searchQueryStrict)).getItems());
-      searchResults = Stream.concat(searchResultsStrict.stream(), searchResultsLoose.stream()).collect(Collectors.toList());
+  private Map<String, Playlist> prefetchExistingPlaylists(String setlistName) {
+    try {
+      return creationCache.prefetchUnindexedPlaylists(setlistName);
+    } catch (SpotifyApiException e) {
+      // Not fatal, they'll just be fetched again when looking for the existing playlist
+      logger.warning("Failed to prefetch existing playlists for " + setlistName + ": " + e.getMessage());
+      return Map.of();
     }
+  }
 
-    // Direct song match of artist
-    if (!searchResults.isEmpty()) {
-      TrackSearchResult bestSearchResult = findBestSearchResult(song, songName, searchResults, queryArtistName, false);
-      if (bestSearchResult.hasResult()) {
-        return bestSearchResult;
-      } else {
-        TrackSearchResult fallback = findBestSearchResult(song, songName, searchResults, queryArtistName, true);
-        if (fallback.hasResult()) {
-          return fallback;
-        }
-      }
+  private Optional<Artist> fetchSetlistArtist(Setlist setlist) {
+    try {
+      return artistIdentityCache.resolve(setlist.getArtistMbid(), setlist.getArtistName())
+        .map(artist -> getArtist(artist.getId()));
+    } catch (SpotifyApiException e) {
+      logger.warning("Failed to fetch artist " + setlist.getArtistName() + ": " + e.getMessage());
+      return Optional.empty();
     }
+  }
 
-    // Cover originals
-    if (song.isCover() && includeCoverOriginals) {
-      String originalArtistName = song.getOriginalArtistName();
-      String fallbackCoverSearchQueryStrict = buildSearchQuery(songName, originalArtistName, true);
-      String fallbackCoverSearchQueryLoose = buildSearchQuery(songName, originalArtistName, false);
-      List<Track> fallbackCoverSearchResultsStrict = Arrays.asList(SpotifyCall.execute(spotifyApi.searchTracks(fallbackCoverSearchQueryStrict)).getItems());
-      List<Track> fallbackCoverSearchResultsLoose = Arrays.asList(SpotifyCall.execute(spotifyApi.searchTracks(fallbackCoverSearchQueryLoose)).getItems());
-
-      List<Track> fallbackCoverSearchResults = Stream.concat(fallbackCoverSearchResultsStrict.stream(), fallbackCoverSearchResultsLoose.stream()).collect(Collectors.toList());
-
-      if (!searchResults.isEmpty()) {
-        TrackSearchResult coverOriginal = TrackSearchResult.notFound(song);
-        TrackSearchResult bestSearchResult = findBestSearchResult(song, songName, fallbackCoverSearchResults, originalArtistName, false);
-        if (bestSearchResult.hasResult()) {
-          coverOriginal = bestSearchResult;
-        } else {
-          TrackSearchResult fallback = findBestSearchResult(song, songName, fallbackCoverSearchResults, originalArtistName, true);
-          if (fallback.hasResult()) {
-            coverOriginal = fallback;
-          }
-        }
+  private Artist getArtist(String artistId) {
+    return spotifyRateLimiter.execute(() -> SpotifyCall.execute(spotifyApi.getArtist(artistId)));
+  }
 
-        if (coverOriginal.hasResult()) {
-          return TrackSearchResult.coverOriginal(song, coverOriginal.getSearchResult());
-        }
-      }
+  private boolean addTracksWithRetry(Playlist targetPlaylist, List<Track> tracksToAdd) {
+    // Recently, the bot randomly received "Insufficient client scope" exceptions for seemingly no reason.
+    // The scope is there and most of the time it works fine, but sometimes it just goes "lol screw you" and fails.
+    // The retry policy treats these as retryable, backing off a bit more with every attempt.
+    try {
+      retryPolicy.run(RetryPolicy.Operation.ADD_TRACKS, () -> spotifyRateLimiter.run(() -> playlistService.addTracksToPlaylist(targetPlaylist, tracksToAdd)));
+      return true;
+    } catch (SpotifyApiException e) {
+      logger.error("Failed to add tracks to playlist " + targetPlaylist.getName() + ": " + e.getMessage());
+      return false;
     }
-
-    return TrackSearchResult.notFound(song);
   }
 
-  private TrackSearchResult findBestSearchResult(Setlist.Song song, String songName, List<Track> searchResults, String queryArtistName, boolean allowAlternateVersions) {
-    List<Track> matchingSongs = searchResults.stream()
-      .filter(track -> SetlistUtils.isStartContained(queryArtistName, SpotifyUtils.getFirstArtistName(track)))
-      .filter(track -> allowAlternateVersions || !SetlistUtils.containsAlternateVersionWord(songName, track.getName()))
-      .filter(track -> isMatchingSongTitle(track.getName(), songName))
-      .sorted(Comparator.comparing(t -> t.getAlbum().getReleaseDate()))
-      .collect(Collectors.toList());
+  private List<TrackSearchResult> findSongsOnSpotify(Setlist setlist, SetlistCreationOptions options, ConversionProgress progress) {
+    // This was originally done using SpotifyOptimizedExecutorService, but that used to cause a lot of
+    // 429 Too Many Requests errors. Now that all calls go through the SpotifyRateLimiter, a few searches
+    // per conversion can safely run in parallel. The rate limiter stays in charge of the global request budget.
+    List<Setlist.Song> songs = setlist.getSongs();
+    TrackSearchResult[] trackSearchResults = new TrackSearchResult[songs.size()];
 
-    // Where possible, try to find songs from official artist's albums first
-    for (Track track : matchingSongs) {
-      String firstArtistName = SpotifyUtils.getFirstArtistName(track.getAlbum());
-      if (SetlistUtils.isInAlbum(track)) {
-        if (queryArtistName.equalsIgnoreCase(firstArtistName) && songName.equalsIgnoreCase(track.getName())) {
-          return TrackSearchResult.exactMatch(song, track);
-        }
+    // Songs that appear multiple times (reprises, intro tapes, medley parts that are also played on their own)
+    // only need to be looked up once, the result is then shared with every occurrence
+    Map<SongLookupKey, List<Integer>> songIndexesByLookup = new LinkedHashMap<>();
+    int skippedCount = 0;
+    for (int i = 0; i < songs.size(); i++) {
+      Setlist.Song song = songs.get(i);
+      if (isSkipped(song, options)) {
+        trackSearchResults[i] = TrackSearchResult.skipped(song);
+        skippedCount++;
+      } else {
+        songIndexesByLookup.computeIfAbsent(SongLookupKey.of(song, options.isIncludeCoverOriginals()), key -> new ArrayList<>()).add(i);
       }
     }
+    List<List<Integer>> lookups = new ArrayList<>(songIndexesByLookup.values());
+    int duplicateLookups = songs.size() - skippedCount - lookups.size();
+    if (duplicateLookups > 0) {
+      logger.debug(String.format("Skipped %d duplicate song lookups for %s", duplicateLookups, setlist));
+    }
 
-    // If that failed, retry it but this time with a lesser strict match
-    for (Track track : matchingSongs) {
-      String firstArtistName = SpotifyUtils.getFirstArtistName(track.getAlbum());
-      if (SetlistUtils.isInAlbum(track)) {
-        if (SetlistUtils.isStartContained(queryArtistName, firstArtistName) && SetlistUtils.isStartContained(track.getName(), songName)) {
-          return TrackSearchResult.closeMatch(song, track);
+    AtomicInteger nextLookup = new AtomicInteger();
+    // Skipped songs aren't searched at all, so they're left out of the progress
+    int searchedCount = songs.size() - skippedCount;
+    AtomicInteger finishedCount = new AtomicInteger();
+    Runnable searchWorker = () -> {
+      for (int i = nextLookup.getAndIncrement(); i < lookups.size(); i = nextLookup.getAndIncrement()) {
+        List<Integer> songIndexes = lookups.get(i);
+        try {
+          TrackSearchResult trackSearchResult = searchTrackCached(songs.get(songIndexes.get(0)), options.isIncludeCoverOriginals());
+          for (int songIndex : songIndexes) {
+            trackSearchResults[songIndex] = TrackSearchResult.of(songs.get(songIndex), trackSearchResult.getSearchResult(), trackSearchResult.getResultType());
+          }
+        } catch (RuntimeException e) {
+          // Stop the other workers from picking up any more songs
+          nextLookup.set(lookups.size());
+          throw e;
+        }
+        synchronized (progress) {
+          progress.send(String.format("Searching for the tracks on Spotify... (%d of %d)", finishedCount.addAndGet(songIndexes.size()), searchedCount));
         }
       }
-    }
+    };
 
-    // Exact string match
-    for (Track track : matchingSongs) {
-       if (track.getName().equalsIgnoreCase(songName)) {
-         return TrackSearchResult.exactMatch(song, track);
-      }
+    int workers = Math.min(searchConcurrency, lookups.size());
+    List<CompletableFuture<Void>> additionalWorkers = new ArrayList<>();
+    for (int i = 1; i < workers; i++) {
+      additionalWorkers.add(CompletableFuture.runAsync(searchWorker, workerExecutor));
     }
-
-    // Starts-with match (purified)
-    for (Track track : matchingSongs) {
-      if (SetlistUtils.isStartContained(track.getName(), songName)) {
-        return TrackSearchResult.closeMatch(song, track);
+    searchWorker.run();
+    try {
+      CompletableFuture.allOf(additionalWorkers.toArray(CompletableFuture[]::new)).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
       }
+      throw e;
     }
+    return Arrays.asList(trackSearchResults);
+  }
 
-    // Contains match purified
-    for (Track track : matchingSongs) {
-      if (SetlistUtils.containsIgnoreCase(track.getName(), SetlistUtils.extractCoreTitle(songName, true))) {
-        return TrackSearchResult.closeMatch(song, track);
-      }
-    }
+  private boolean isSkipped(Setlist.Song song, SetlistCreationOptions options) {
+    boolean notSkipped = !song.isTape() && !song.isMedleyPart()
+      || song.isTape() && (song.isCover() ? options.isIncludeTapesForeign() : options.isIncludeTapesMain())
+      || song.isMedleyPart() && options.isIncludeMedleys();
+    return !notSkipped;
+  }
 
-    // Contains match any (very last attempt)
-    for (Track track : matchingSongs) {
-      if (SetlistUtils.containsIgnoreCase(track.getName(), SetlistUtils.extractCoreTitle(songName, false))) {
-        return TrackSearchResult.closeMatch(song, track);
-      }
+  private TrackSearchResult searchTrackCached(Setlist.Song song, boolean includeCoverOriginals) {
+    Optional<TrackSearchResult> cachedResult = trackSearchCache.get(song, includeCoverOriginals);
+    if (cachedResult.isPresent()) {
+      return cachedResult.get();
     }
-
-    // Otherwise, no song found :(
-    return TrackSearchResult.notFound(song);
+    TrackSearchResult trackSearchResult = searchTrack(song, includeCoverOriginals);
+    trackSearchCache.put(song, includeCoverOriginals, trackSearchResult);
+    return trackSearchResult;
   }
 
-  private boolean isMatchingSongTitle(String spotifySearchResultSongName, String setlistFmSongName) {
-    if (SetlistUtils.containsIgnoreCaseNormalized(spotifySearchResultSongName, setlistFmSongName)) {
-      return true;
-    }
-    return isApproximateMatch(setlistFmSongName, spotifySearchResultSongName);
+  // visible for testing
+  TrackSearchResult searchTrack(Setlist.Song song, boolean includeCoverOriginals) {
+    return searchQueryPlanner.searchTrack(song, includeCoverOriginals, this::searchTracks);
   }
 
   public boolean isApproximateMatch(String query, String title) {
-    int maxDistance = (int) Math.ceil(query.length() * 0.2); // Allow ~20% difference
-    LevenshteinDistance levenshtein = new LevenshteinDistance();
-    String normalizedQuery = SetlistUtils.purifyString(query);
-    String normalizedTitle = SetlistUtils.purifyString(title);
-    int distance = levenshtein.apply(normalizedQuery, normalizedTitle);
-    return distance <= maxDistance;
+    return trackMatcher.isApproximateMatch(new NormalizedText(query), new NormalizedText(title));
   }
 
 
-  private String buildSearchQuery(String songName, String artistName, boolean strictSearch) {
-    if (strictSearch) {
-      // Replace all special characters with white space cause Spotify struggled with apostrophes and such during strict search
-      String artistNamePurified = SetlistUtils.purifyString(artistName).toLowerCase();
-      String songNamePurified = SetlistUtils.purifyString(songName).toLowerCase();
-      return String.format(" track:\"%s\" artist:\"%s\"", songNamePurified, artistNamePurified).replaceAll(" ", "%20").replaceAll("\"", "%22");  //.replaceAll(":", "%3A");
-    }
-    return songName + " " + artistName;
+  private List<Track> searchTracks(String searchQuery) {
+    return Arrays.asList(spotifyRateLimiter.execute(() -> SpotifyCall.execute(spotifyApi.searchTracks(searchQuery).limit(SearchQueryPlanner.SEARCH_PAGE_SIZE))).getItems());
   }
 
   /**
@@ -378,8 +477,7 @@ public class SetlistCreator {
    * Note: Due to a weird quirk with Spotify's API, it will sometimes fail with Not Found
    *       despite the artist clearly having images. What's weirder is that upon multiple
    *       retries it will magically start working again. Therefore, this method will
-   *       automatically retry the attachment process up to 10 times, which so far has
-   *       always worked.
+   *       automatically retry the attachment process (see {@link RetryPolicy.Operation#ATTACH_IMAGE}).
    *
    * @param artist the artist to get the image from
    * @param targetPlaylist the playlist to attach the image to
@@ -387,15 +485,11 @@ public class SetlistCreator {
   private void attachArtistImage(Artist artist, Playlist targetPlaylist) {
     String image = SpotifyUtils.findLargestImage(artist.getImages());
     if (image != null) {
-      for (int i = 1; i <= 10; i++) {
-        try {
-          playlistService.attachImageToPlaylist(targetPlaylist, image);
-          return;
-        } catch (Exception e) {
-          logger.debug("Retrying attaching artist image for " + artist.getName() + " (attempt: " + i + ")");
-        }
+      try {
+        retryPolicy.run(RetryPolicy.Operation.ATTACH_IMAGE, () -> spotifyRateLimiter.run(() -> playlistService.attachImageToPlaylist(targetPlaylist, image)));
+      } catch (RuntimeException e) {
+        logger.error("Failed to attach artist image -- " + artist.getName());
       }
-      logger.error("Failed to attach artist image -- " + artist.getName());
     }
   }
 }
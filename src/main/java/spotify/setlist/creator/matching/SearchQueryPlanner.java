@@ -0,0 +1,248 @@
+package spotify.setlist.creator.matching;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import spotify.setlist.creator.misc.ArtistCatalog;
+import spotify.setlist.creator.misc.ArtistIdentityCache;
+import spotify.setlist.data.Setlist;
+import spotify.setlist.data.TrackSearchResult;
+import spotify.setlist.util.SetlistUtils;
+import spotify.setlist.util.StatsProvider;
+import spotify.util.SpotifyLogger;
+
+/**
+ * Decides which Spotify searches are actually needed to find a song. The cheap loose query always goes first,
+ * and the strict query is only sent if the loose results don't already contain a good enough match
+ * (see {@link SearchQueryPlanner#isLooseSearchConclusive} for when that's safe). The same applies to the search for cover originals. If the {@link ArtistCatalog} is enabled,
+ * it's consulted before any search query is sent at all.
+ * <p>
+ * Artists are resolved to their Spotify artist via the {@link ArtistIdentityCache} first, so that candidates
+ * can be filtered by artist ID rather than by comparing artist names.
+ */
+@Component
+public class SearchQueryPlanner implements StatsProvider {
+  private static final String TARGET_TIER_ENV = "setlist_bot.search_target_tier";
+
+  /**
+   * The number of results requested per track search
+   */
+  public static final int SEARCH_PAGE_SIZE = 20;
+
+  private final TrackMatcher trackMatcher;
+  private final ArtistCatalog artistCatalog;
+  private final ArtistIdentityCache artistIdentityCache;
+  private final SpotifyLogger logger;
+  private final TrackMatcher.MatchTier targetTier;
+
+  private final AtomicLong spotifySearches;
+  private final AtomicLong strictQueriesSent;
+  private final AtomicLong strictQueriesSkipped;
+  private final AtomicLong coverSearchesSkipped;
+  private final AtomicLong catalogHits;
+  private final AtomicLong catalogMisses;
+  private final AtomicLong catalogSkipped;
+  private final AtomicLong identityFallbacks;
+  private final AtomicLong identityFallbacksRefused;
+
+  SearchQueryPlanner(TrackMatcher trackMatcher, ArtistCatalog artistCatalog, ArtistIdentityCache artistIdentityCache, SpotifyLogger logger, Environment environment) {
+    this.trackMatcher = trackMatcher;
+    this.artistCatalog = artistCatalog;
+    this.artistIdentityCache = artistIdentityCache;
+    this.logger = logger;
+    this.targetTier = environment.getProperty(TARGET_TIER_ENV, TrackMatcher.MatchTier.class, TrackMatcher.MatchTier.ALBUM_EXACT);
+
+    this.spotifySearches = new AtomicLong();
+    this.strictQueriesSent = new AtomicLong();
+    this.strictQueriesSkipped = new AtomicLong();
+    this.coverSearchesSkipped = new AtomicLong();
+    this.catalogHits = new AtomicLong();
+    this.catalogMisses = new AtomicLong();
+    this.catalogSkipped = new AtomicLong();
+    this.identityFallbacks = new AtomicLong();
+    this.identityFallbacksRefused = new AtomicLong();
+  }
+
+  /**
+   * Search the given song on Spotify, sending as few search queries as possible.
+   *
+   * @param song the song
+   * @param includeCoverOriginals whether to fall back to the original artist of covers
+   * @param spotifySearch the actual Spotify search call
+   * @return the search result
+   */
+  public TrackSearchResult searchTrack(Setlist.Song song, boolean includeCoverOriginals, Function<String, List<Track>> spotifySearch) {
+    String setlistArtistName = song.isTape() ? song.getOriginalArtistName() : song.getArtistName();
+    String setlistArtistMbid = song.isTape() ? song.getOriginalArtistMbid() : song.getArtistMbid();
+    // The resolved artist is only used to filter the candidates, the queries are built from the setlist.fm name
+    Optional<ArtistIdentityCache.SpotifyArtist> queryArtist = artistIdentityCache.resolve(setlistArtistMbid, setlistArtistName);
+    String songName = song.getSongName();
+    String songNameCore = SetlistUtils.extractCoreTitle(songName, false);
+
+    // If we already know the search params are not going to cause any headaches,
+    // there's no need to ever run a second strict query to Spotify
+    boolean strictQueryUseful = !songName.equalsIgnoreCase(songNameCore) || !SetlistUtils.isPureText(songName, setlistArtistName);
+    String songNameCorePurified = SetlistUtils.extractCoreTitle(songName, true);
+    SongQuery songQuery = new SongQuery(songName, setlistArtistName, queryArtist.map(ArtistIdentityCache.SpotifyArtist::getId).orElse(null));
+
+    // Artist catalog (if enabled, and only for artists known to Spotify)
+    if (artistCatalog.isEnabled()) {
+      if (queryArtist.isPresent()) {
+        TrackMatcher.Match catalogMatch = trackMatcher.match(songQuery, artistCatalog.findCandidates(queryArtist.get(), songName));
+        if (catalogMatch.isAtLeast(targetTier)) {
+          catalogHits.incrementAndGet();
+          return trackMatcher.accept(song, catalogMatch);
+        }
+        catalogMisses.incrementAndGet();
+      } else {
+        catalogSkipped.incrementAndGet();
+      }
+    }
+
+    List<TrackCandidate> candidates = search(song, songQuery, songNameCore, songNameCorePurified, setlistArtistName, strictQueryUseful, spotifySearch);
+
+    // Direct song match of artist
+    if (!candidates.isEmpty()) {
+      TrackMatcher.Match match = matchWithFallback(songQuery, candidates, setlistArtistMbid, setlistArtistName);
+      if (match.hasMatch()) {
+        return trackMatcher.accept(song, match);
+      }
+    }
+
+    // Cover originals (only searched for if the regular search turned up anything at all)
+    if (song.isCover() && includeCoverOriginals) {
+      if (candidates.isEmpty()) {
+        coverSearchesSkipped.incrementAndGet();
+      } else {
+        Optional<ArtistIdentityCache.SpotifyArtist> originalArtist = artistIdentityCache.resolve(song.getOriginalArtistMbid(), song.getOriginalArtistName());
+        String originalArtistName = song.getOriginalArtistName();
+        SongQuery coverSongQuery = new SongQuery(songName, originalArtistName, originalArtist.map(ArtistIdentityCache.SpotifyArtist::getId).orElse(null));
+        List<TrackCandidate> coverCandidates = search(song, coverSongQuery, songName, songName, originalArtistName, true, spotifySearch);
+        TrackMatcher.Match coverMatch = matchWithFallback(coverSongQuery, coverCandidates, song.getOriginalArtistMbid(), originalArtistName);
+        if (coverMatch.hasMatch()) {
+          return TrackSearchResult.coverOriginal(song, trackMatcher.accept(song, coverMatch).getSearchResult());
+        }
+      }
+    }
+
+    return trackMatcher.accept(song, TrackMatcher.Match.NONE);
+  }
+
+  /**
+   * Match by artist ID and, should that fail, by artist name. The fallback is only taken if none of the candidates
+   * belongs to the resolved artist at all, which hints at the artist having been resolved to the wrong namesake.
+   * Otherwise the resolved artist simply doesn't have the song, and a namesake's track would be a false match.
+   * <p>
+   * Name matches are reported to the {@link ArtistIdentityCache} as evidence for which Spotify artist is meant.
+   */
+  private TrackMatcher.Match matchWithFallback(SongQuery songQuery, List<TrackCandidate> candidates, String artistMbid, String artistName) {
+    TrackMatcher.Match match = trackMatcher.match(songQuery, candidates);
+    String artistId = songQuery.getArtistId();
+    if (artistId == null) {
+      if (match.hasMatch()) {
+        artistIdentityCache.recordEvidence(artistMbid, artistName, match.getCandidate().getFirstArtistId());
+      }
+    } else if (!match.hasMatch()) {
+      boolean resolvedArtistFound = candidates.stream()
+        .anyMatch(candidate -> artistId.equals(candidate.getFirstArtistId()) || artistId.equals(candidate.getAlbumArtistId()));
+      if (resolvedArtistFound) {
+        identityFallbacksRefused.incrementAndGet();
+        return match;
+      }
+      match = trackMatcher.match(songQuery.withoutArtistId(), candidates);
+      if (match.hasMatch()) {
+        identityFallbacks.incrementAndGet();
+        artistIdentityCache.recordEvidence(artistMbid, artistName, match.getCandidate().getFirstArtistId());
+      }
+    }
+    return match;
+  }
+
+  /**
+   * Run the loose query and, if that didn't turn up a match of the target tier, the strict query.
+   * The strict results come first, as they're usually the more relevant ones.
+   */
+  private List<TrackCandidate> search(Setlist.Song song, SongQuery songQuery, String looseSongName, String strictSongName, String artistName,
+      boolean strictQueryUseful, Function<String, List<Track>> spotifySearch) {
+    List<TrackCandidate> looseCandidates = TrackCandidate.of(runSearch(buildSearchQuery(looseSongName, artistName, false), spotifySearch));
+    if (!strictQueryUseful) {
+      return looseCandidates;
+    }
+
+    TrackMatcher.Match looseMatch = trackMatcher.match(songQuery, looseCandidates);
+    if (isLooseSearchConclusive(looseMatch, looseCandidates.size(), targetTier)) {
+      strictQueriesSkipped.incrementAndGet();
+      logger.debug(String.format("Strict search skipped, loose search already found a %s match: %s", looseMatch.getTier(), song.getSongName()));
+      return looseCandidates;
+    }
+
+    strictQueriesSent.incrementAndGet();
+    List<TrackCandidate> candidates = new ArrayList<>(TrackCandidate.of(runSearch(buildSearchQuery(strictSongName, artistName, true), spotifySearch)));
+    candidates.addAll(looseCandidates);
+    return candidates;
+  }
+
+  /**
+   * Whether the strict query can be skipped without changing the outcome. Ties between equally good matches go
+   * to the earliest release, so the strict query could still turn up a better pick than the loose one, even if the
+   * loose results already contain a match of the target tier. That can only happen if the loose results were
+   * cut off, though, as the strict results are otherwise (practically) a subset of the loose ones.
+   * <p>
+   * Trade-off: a strict-only match outside of a complete loose page (e.g. due to special characters that only
+   * the purified strict query gets around) can still be missed. Such a track would have a different name than
+   * the match that was already found, so it would rarely win the tie-break anyway.
+   *
+   * @param looseMatch the best match among the loose results
+   * @param looseResultCount the number of loose results
+   * @param targetTier the match tier that's considered good enough
+   * @return true if the strict query can be skipped
+   */
+  static boolean isLooseSearchConclusive(TrackMatcher.Match looseMatch, int looseResultCount, TrackMatcher.MatchTier targetTier) {
+    return looseMatch.isAtLeast(targetTier) && looseResultCount < SEARCH_PAGE_SIZE;
+  }
+
+  private List<Track> runSearch(String searchQuery, Function<String, List<Track>> spotifySearch) {
+    spotifySearches.incrementAndGet();
+    return spotifySearch.apply(searchQuery);
+  }
+
+  private String buildSearchQuery(String songName, String artistName, boolean strictSearch) {
+    if (strictSearch) {
+      // Replace all special characters with white space cause Spotify struggled with apostrophes and such during strict search
+      String artistNamePurified = SetlistUtils.purifyString(artistName).toLowerCase();
+      String songNamePurified = SetlistUtils.purifyString(songName).toLowerCase();
+      return String.format(" track:\"%s\" artist:\"%s\"", songNamePurified, artistNamePurified).replaceAll(" ", "%20").replaceAll("\"", "%22");  //.replaceAll(":", "%3A");
+    }
+    return songName + " " + artistName;
+  }
+
+  @Override
+  public String getStatsName() {
+    return "searchQueryPlanner";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("targetTier", targetTier.getStatsName());
+    stats.put("spotifySearches", spotifySearches.get());
+    stats.put("strictQueriesSent", strictQueriesSent.get());
+    stats.put("strictQueriesSkipped", strictQueriesSkipped.get());
+    stats.put("coverSearchesSkipped", coverSearchesSkipped.get());
+    stats.put("catalogHits", catalogHits.get());
+    stats.put("catalogMisses", catalogMisses.get());
+    stats.put("catalogSkipped", catalogSkipped.get());
+    stats.put("identityFallbacks", identityFallbacks.get());
+    stats.put("identityFallbacksRefused", identityFallbacksRefused.get());
+    return stats;
+  }
+}
@@ -0,0 +1,71 @@
+package spotify.setlist.creator.matching;
+
+import spotify.setlist.util.NormalizedText;
+import spotify.setlist.util.SetlistUtils;
+
+/**
+ * The setlist.fm side of a search: the song name and the artist it's expected from, normalized once per search
+ */
+public class SongQuery {
+  private final NormalizedText songName;
+  private final NormalizedText artistName;
+  private final String artistId;
+  private final NormalizedText coreTitle;
+  private final NormalizedText coreTitlePurified;
+  private final boolean mentionsAlternateVersionWord;
+
+  public SongQuery(String songName, String artistName) {
+    this(songName, artistName, null);
+  }
+
+  /**
+   * @param songName the song name
+   * @param artistName the artist name
+   * @param artistId the Spotify ID of the artist, if known. Candidates are then filtered by that ID instead of the name.
+   */
+  public SongQuery(String songName, String artistName, String artistId) {
+    this.songName = new NormalizedText(songName);
+    this.artistName = new NormalizedText(artistName);
+    this.artistId = artistId;
+    this.coreTitle = new NormalizedText(SetlistUtils.extractCoreTitle(songName, false));
+    this.coreTitlePurified = new NormalizedText(SetlistUtils.extractCoreTitle(songName, true));
+    this.mentionsAlternateVersionWord = SetlistUtils.mentionsAlternateVersionWord(songName);
+  }
+
+  public NormalizedText getSongName() {
+    return songName;
+  }
+
+  public NormalizedText getArtistName() {
+    return artistName;
+  }
+
+  /**
+   * @return the Spotify ID of the artist (may be null)
+   */
+  public String getArtistId() {
+    return artistId;
+  }
+
+  /**
+   * @return a copy of this query without the artist ID, to fall back to comparing artist names
+   */
+  public SongQuery withoutArtistId() {
+    return new SongQuery(songName.getValue(), artistName.getValue());
+  }
+
+  public NormalizedText getCoreTitle() {
+    return coreTitle;
+  }
+
+  public NormalizedText getCoreTitlePurified() {
+    return coreTitlePurified;
+  }
+
+  /**
+   * @return true if the song name itself already mentions a word like "live" or "demo"
+   */
+  public boolean mentionsAlternateVersionWord() {
+    return mentionsAlternateVersionWord;
+  }
+}
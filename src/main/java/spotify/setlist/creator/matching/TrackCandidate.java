@@ -0,0 +1,96 @@
+package spotify.setlist.creator.matching;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import spotify.setlist.util.NormalizedText;
+import spotify.setlist.util.SetlistUtils;
+import spotify.util.SpotifyUtils;
+
+/**
+ * A Spotify search result, with everything the matching needs already extracted and normalized
+ */
+public class TrackCandidate {
+  private final Track track;
+  private final NormalizedText name;
+  private final NormalizedText firstArtistName;
+  private final NormalizedText albumArtistName;
+  private final String firstArtistId;
+  private final String albumArtistId;
+  private final boolean inAlbum;
+  private final boolean alternateVersion;
+
+  public TrackCandidate(Track track) {
+    this.track = track;
+    this.name = new NormalizedText(track.getName());
+    this.firstArtistName = new NormalizedText(SpotifyUtils.getFirstArtistName(track));
+    this.albumArtistName = new NormalizedText(SpotifyUtils.getFirstArtistName(track.getAlbum()));
+    this.firstArtistId = getFirstArtistId(track.getArtists());
+    this.albumArtistId = getFirstArtistId(track.getAlbum().getArtists());
+    this.inAlbum = SetlistUtils.isInAlbum(track);
+    this.alternateVersion = SetlistUtils.isAlternateVersionName(track.getName());
+  }
+
+  /**
+   * Wrap all given search results.
+   *
+   * @param searchResults the Spotify search results
+   * @return the candidates, in the same order
+   */
+  public static List<TrackCandidate> of(List<Track> searchResults) {
+    return searchResults.stream()
+      .map(TrackCandidate::new)
+      .collect(Collectors.toList());
+  }
+
+  public Track getTrack() {
+    return track;
+  }
+
+  public NormalizedText getName() {
+    return name;
+  }
+
+  public NormalizedText getFirstArtistName() {
+    return firstArtistName;
+  }
+
+  public NormalizedText getAlbumArtistName() {
+    return albumArtistName;
+  }
+
+  /**
+   * @return the Spotify ID of the first artist of the track (may be null)
+   */
+  public String getFirstArtistId() {
+    return firstArtistId;
+  }
+
+  /**
+   * @return the Spotify ID of the first artist of the album (may be null)
+   */
+  public String getAlbumArtistId() {
+    return albumArtistId;
+  }
+
+  public boolean isInAlbum() {
+    return inAlbum;
+  }
+
+  public String getReleaseDate() {
+    return track.getAlbum().getReleaseDate();
+  }
+
+  /**
+   * @return true if the track name contains a word indicating it's not the original studio version
+   */
+  public boolean isAlternateVersion() {
+    return alternateVersion;
+  }
+
+  private static String getFirstArtistId(ArtistSimplified[] artists) {
+    return artists != null && artists.length > 0 ? artists[0].getId() : null;
+  }
+}
@@ -0,0 +1,299 @@
+package spotify.setlist.creator.matching;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import spotify.setlist.data.Setlist;
+import spotify.setlist.data.TrackSearchResult;
+import spotify.setlist.util.FuzzyMatcher;
+import spotify.setlist.util.NormalizedText;
+import spotify.setlist.util.StatsProvider;
+
+/**
+ * Picks the best matching Spotify track for a song out of a list of search results.
+ * <p>
+ * Every candidate that passes the basic artist and title checks is assigned the best {@link MatchTier}
+ * it qualifies for, all in a single pass. The candidate with the best tier wins, ties go to the earliest
+ * release date (and after that, to the order of the search results). Tracks that are most likely
+ * alternate versions (live, demo, etc.) are only considered if no other candidate matches at all.
+ */
+@Component
+public class TrackMatcher implements StatsProvider {
+  private final Map<MatchTier, AtomicLong> tierWins;
+  private final AtomicLong alternateVersionWins;
+  private final AtomicLong noMatches;
+
+  TrackMatcher() {
+    this.tierWins = new EnumMap<>(MatchTier.class);
+    for (MatchTier matchTier : MatchTier.values()) {
+      tierWins.put(matchTier, new AtomicLong());
+    }
+    this.alternateVersionWins = new AtomicLong();
+    this.noMatches = new AtomicLong();
+  }
+
+  /**
+   * Find the best match for the given song among the given candidates.
+   *
+   * @param song the song
+   * @param songQuery the normalized song name and artist name to look for
+   * @param candidates the search results
+   * @return the best match, or a not-found result if none of the candidates matched
+   */
+  public TrackSearchResult findBestMatch(Setlist.Song song, SongQuery songQuery, List<TrackCandidate> candidates) {
+    return accept(song, match(songQuery, candidates));
+  }
+
+  /**
+   * Find the best match among the given candidates without recording it in the statistics,
+   * e.g. to decide whether further searches are necessary.
+   *
+   * @param songQuery the normalized song name and artist name to look for
+   * @param candidates the search results
+   * @return the best match (which may be empty)
+   */
+  public Match match(SongQuery songQuery, List<TrackCandidate> candidates) {
+    TrackCandidate bestCandidate = null;
+    MatchTier bestTier = null;
+    TrackCandidate bestAlternateCandidate = null;
+    MatchTier bestAlternateTier = null;
+
+    for (TrackCandidate candidate : candidates) {
+      MatchTier matchTier = determineTier(songQuery, candidate);
+      if (matchTier == null) {
+        continue;
+      }
+      if (!candidate.isAlternateVersion() || songQuery.mentionsAlternateVersionWord()) {
+        if (isBetter(matchTier, candidate, bestTier, bestCandidate)) {
+          bestCandidate = candidate;
+          bestTier = matchTier;
+        }
+      }
+      if (isBetter(matchTier, candidate, bestAlternateTier, bestAlternateCandidate)) {
+        bestAlternateCandidate = candidate;
+        bestAlternateTier = matchTier;
+      }
+    }
+
+    if (bestCandidate != null) {
+      return new Match(bestCandidate, bestTier, false);
+    }
+    if (bestAlternateCandidate != null) {
+      return new Match(bestAlternateCandidate, bestAlternateTier, true);
+    }
+    return Match.NONE;
+  }
+
+  /**
+   * Record the given match as final decision for the given song.
+   *
+   * @param song the song
+   * @param match the match, as returned by {@link TrackMatcher#match}
+   * @return the match as {@link TrackSearchResult}
+   */
+  public TrackSearchResult accept(Setlist.Song song, Match match) {
+    if (!match.hasMatch()) {
+      noMatches.incrementAndGet();
+      return TrackSearchResult.notFound(song);
+    }
+    tierWins.get(match.getTier()).incrementAndGet();
+    if (match.isAlternateVersion()) {
+      alternateVersionWins.incrementAndGet();
+    }
+    return match.getTier().toResult(song, match.getCandidate());
+  }
+
+  /**
+   * The candidates are iterated in search result order, so a later candidate only wins
+   * a tie if it has a strictly earlier release date.
+   */
+  private static boolean isBetter(MatchTier matchTier, TrackCandidate candidate, MatchTier bestTier, TrackCandidate bestCandidate) {
+    if (bestCandidate == null) {
+      return true;
+    }
+    int tierComparison = matchTier.compareTo(bestTier);
+    if (tierComparison != 0) {
+      return tierComparison < 0;
+    }
+    return candidate.getReleaseDate().compareTo(bestCandidate.getReleaseDate()) < 0;
+  }
+
+  /**
+   * @return the best tier the given candidate qualifies for, or null if it isn't a match at all
+   */
+  private MatchTier determineTier(SongQuery songQuery, TrackCandidate candidate) {
+    NormalizedText songName = songQuery.getSongName();
+    NormalizedText queryArtistName = songQuery.getArtistName();
+    NormalizedText trackName = candidate.getName();
+    String artistId = songQuery.getArtistId();
+    boolean artistMatches = artistId != null
+      ? artistId.equals(candidate.getFirstArtistId())
+      : queryArtistName.isStartContained(candidate.getFirstArtistName());
+    if (!artistMatches || !isMatchingSongTitle(trackName, songName)) {
+      return null;
+    }
+
+    boolean startContained = trackName.isStartContained(songName);
+    if (candidate.isInAlbum()) {
+      boolean albumArtistMatches = artistId != null
+        ? artistId.equals(candidate.getAlbumArtistId())
+        : queryArtistName.equalsIgnoreCase(candidate.getAlbumArtistName());
+      if (albumArtistMatches && songName.equalsIgnoreCase(trackName)) {
+        return MatchTier.ALBUM_EXACT;
+      }
+      boolean albumArtistCloseMatches = artistId != null
+        ? artistId.equals(candidate.getAlbumArtistId())
+        : queryArtistName.isStartContained(candidate.getAlbumArtistName());
+      if (startContained && albumArtistCloseMatches) {
+        return MatchTier.ALBUM_CLOSE;
+      }
+    }
+    if (trackName.equalsIgnoreCase(songName)) {
+      return MatchTier.EXACT;
+    }
+    if (startContained) {
+      return MatchTier.STARTS_WITH;
+    }
+    if (trackName.containsIgnoreCase(songQuery.getCoreTitlePurified())) {
+      return MatchTier.CONTAINS_PURIFIED;
+    }
+    if (trackName.containsIgnoreCase(songQuery.getCoreTitle())) {
+      return MatchTier.CONTAINS_ANY;
+    }
+    return null;
+  }
+
+  private boolean isMatchingSongTitle(NormalizedText spotifySearchResultSongName, NormalizedText setlistFmSongName) {
+    if (spotifySearchResultSongName.containsIgnoreCaseNormalized(setlistFmSongName)) {
+      return true;
+    }
+    return isApproximateMatch(setlistFmSongName, spotifySearchResultSongName);
+  }
+
+  /**
+   * Check if the given title is roughly the same as the query, allowing for ~20% difference.
+   *
+   * @param query the setlist.fm song name
+   * @param title the Spotify track name
+   * @return true if they're close enough
+   */
+  public boolean isApproximateMatch(NormalizedText query, NormalizedText title) {
+    int maxDistance = (int) Math.ceil(query.getValue().length() * 0.2); // Allow ~20% difference
+    return FuzzyMatcher.isWithinDistance(query.getPurified(), title.getPurified(), maxDistance);
+  }
+
+  @Override
+  public String getStatsName() {
+    return "trackMatcher";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    for (Map.Entry<MatchTier, AtomicLong> tierWin : tierWins.entrySet()) {
+      stats.put(tierWin.getKey().getStatsName(), tierWin.getValue().get());
+    }
+    stats.put("alternateVersionWins", alternateVersionWins.get());
+    stats.put("noMatches", noMatches.get());
+    return stats;
+  }
+
+  public static class Match {
+    static final Match NONE = new Match(null, null, false);
+
+    private final TrackCandidate candidate;
+    private final MatchTier tier;
+    private final boolean alternateVersion;
+
+    private Match(TrackCandidate candidate, MatchTier tier, boolean alternateVersion) {
+      this.candidate = candidate;
+      this.tier = tier;
+      this.alternateVersion = alternateVersion;
+    }
+
+    public boolean hasMatch() {
+      return candidate != null;
+    }
+
+    public TrackCandidate getCandidate() {
+      return candidate;
+    }
+
+    public MatchTier getTier() {
+      return tier;
+    }
+
+    /**
+     * @return true if the match could only be found by allowing alternate versions (live, demo, etc.)
+     */
+    public boolean isAlternateVersion() {
+      return alternateVersion;
+    }
+
+    /**
+     * @param targetTier the minimum tier
+     * @return true if this is a regular (non-alternate version) match of at least the given tier
+     */
+    public boolean isAtLeast(MatchTier targetTier) {
+      return hasMatch() && !alternateVersion && tier.compareTo(targetTier) <= 0;
+    }
+  }
+
+  /**
+   * The match tiers from best to worst
+   */
+  public enum MatchTier {
+    /**
+     * Same name and artist on one of the artist's albums
+     */
+    ALBUM_EXACT("albumExact", true),
+
+    /**
+     * Name and artist start the same on one of the artist's albums
+     */
+    ALBUM_CLOSE("albumClose", false),
+
+    /**
+     * Same name, ignoring case
+     */
+    EXACT("exact", true),
+
+    /**
+     * One name starts with the other (purified)
+     */
+    STARTS_WITH("startsWith", false),
+
+    /**
+     * The name contains the purified core title of the song
+     */
+    CONTAINS_PURIFIED("containsPurified", false),
+
+    /**
+     * The name contains the core title of the song (very last attempt)
+     */
+    CONTAINS_ANY("containsAny", false);
+
+    private final String statsName;
+    private final boolean exactMatch;
+
+    MatchTier(String statsName, boolean exactMatch) {
+      this.statsName = statsName;
+      this.exactMatch = exactMatch;
+    }
+
+    public String getStatsName() {
+      return statsName;
+    }
+
+    TrackSearchResult toResult(Setlist.Song song, TrackCandidate candidate) {
+      return exactMatch
+        ? TrackSearchResult.exactMatch(song, candidate.getTrack())
+        : TrackSearchResult.closeMatch(song, candidate.getTrack());
+    }
+  }
+}
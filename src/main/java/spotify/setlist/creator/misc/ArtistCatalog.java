@@ -0,0 +1,323 @@
+package spotify.setlist.creator.misc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.Album;
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.api.SpotifyCall;
+import spotify.api.events.SpotifyApiException;
+import spotify.setlist.creator.matching.TrackCandidate;
+import spotify.setlist.util.ExpiringLruCache;
+import spotify.setlist.util.SetlistUtils;
+import spotify.setlist.util.StatsProvider;
+import spotify.util.SpotifyLogger;
+
+/**
+ * Local copy of the discographies (albums and singles) of recently requested artists. Since most songs of a setlist
+ * are by the same artist, a handful of paged catalog requests can replace dozens of individual track searches.
+ * The catalog is then reused for every other setlist of the same artist, until it expires.
+ * <p>
+ * This is opt-in, as it's only a shortcut: if a song can't be found in the catalog, the regular search is used.
+ * Catalogs that failed to load aren't retried for a few minutes (setlist_bot.artist_catalog_failure_ttl_seconds),
+ * so the remaining songs of the setlist go straight to the regular search.
+ */
+@Component
+public class ArtistCatalog implements StatsProvider {
+  private static final String ENABLED_ENV = "setlist_bot.artist_catalog";
+  private static final String MAX_ARTISTS_ENV = "setlist_bot.artist_catalog_max_artists";
+  private static final String TTL_HOURS_ENV = "setlist_bot.artist_catalog_ttl_hours";
+  private static final String MAX_ALBUMS_ENV = "setlist_bot.artist_catalog_max_albums";
+  private static final String MAX_TRACKS_ENV = "setlist_bot.artist_catalog_max_tracks";
+  private static final String FAILURE_TTL_SECONDS_ENV = "setlist_bot.artist_catalog_failure_ttl_seconds";
+  private static final int DEFAULT_MAX_ARTISTS = 200;
+  private static final int DEFAULT_TTL_HOURS = 24;
+  private static final int DEFAULT_MAX_ALBUMS = 200;
+  private static final int DEFAULT_MAX_TRACKS = 100000;
+  private static final int DEFAULT_FAILURE_TTL_SECONDS = 300;
+
+  private static final String ALBUM_TYPES = "album,single";
+  private static final int ALBUMS_PAGE_SIZE = 50;
+  private static final int ALBUM_TRACKS_PAGE_SIZE = 50;
+  private static final int SEVERAL_ALBUMS_LIMIT = 20;
+
+  private final SpotifyApi spotifyApi;
+  private final SpotifyRateLimiter spotifyRateLimiter;
+  private final SpotifyLogger logger;
+  private final boolean enabled;
+  private final int maxAlbums;
+
+  private final ExpiringLruCache<String, Catalog> catalogs;
+  private final Map<String, CompletableFuture<Catalog>> catalogsLoading;
+  private final ExpiringLruCache<String, Boolean> failedCatalogs;
+
+  private final AtomicLong catalogsLoaded;
+  private final AtomicLong catalogRequests;
+  private final AtomicLong catalogFailures;
+  private final AtomicLong catalogFailuresSkipped;
+
+  ArtistCatalog(SpotifyApi spotifyApi, SpotifyRateLimiter spotifyRateLimiter, SpotifyLogger logger, Environment environment) {
+    this.spotifyApi = spotifyApi;
+    this.spotifyRateLimiter = spotifyRateLimiter;
+    this.logger = logger;
+    this.enabled = "true".equals(environment.getProperty(ENABLED_ENV));
+    this.maxAlbums = environment.getProperty(MAX_ALBUMS_ENV, Integer.class, DEFAULT_MAX_ALBUMS);
+
+    int maxArtists = environment.getProperty(MAX_ARTISTS_ENV, Integer.class, DEFAULT_MAX_ARTISTS);
+    int ttlHours = environment.getProperty(TTL_HOURS_ENV, Integer.class, DEFAULT_TTL_HOURS);
+    // Discographies range from a single EP to thousands of tracks, so the number of artists alone doesn't bound the memory
+    int maxTracks = environment.getProperty(MAX_TRACKS_ENV, Integer.class, DEFAULT_MAX_TRACKS);
+    this.catalogs = new ExpiringLruCache<>(maxArtists, Duration.ofHours(ttlHours), maxTracks, Catalog::getTrackCount);
+    this.catalogsLoading = new ConcurrentHashMap<>();
+    int failureTtlSeconds = environment.getProperty(FAILURE_TTL_SECONDS_ENV, Integer.class, DEFAULT_FAILURE_TTL_SECONDS);
+    this.failedCatalogs = new ExpiringLruCache<>(maxArtists, Duration.ofSeconds(failureTtlSeconds));
+
+    this.catalogsLoaded = new AtomicLong();
+    this.catalogRequests = new AtomicLong();
+    this.catalogFailures = new AtomicLong();
+    this.catalogFailuresSkipped = new AtomicLong();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Get all tracks from the discography of the given artist that could be the given song.
+   * The catalog of the artist is loaded on first use (concurrent requests for the same artist share the download).
+   *
+   * @param artist the Spotify artist
+   * @param songName the song name
+   * @return the candidates, may be empty
+   */
+  public List<TrackCandidate> findCandidates(ArtistIdentityCache.SpotifyArtist artist, String songName) {
+    Catalog catalog = getCatalog(artist);
+    return catalog.findCandidates(songName);
+  }
+
+  private Catalog getCatalog(ArtistIdentityCache.SpotifyArtist artist) {
+    String artistKey = artist.getId();
+    Catalog catalog = catalogs.get(artistKey);
+    if (catalog != null) {
+      return catalog;
+    }
+    if (failedCatalogs.get(artistKey) != null) {
+      catalogFailuresSkipped.incrementAndGet();
+      return Catalog.EMPTY;
+    }
+
+    CompletableFuture<Catalog> loading = new CompletableFuture<>();
+    CompletableFuture<Catalog> alreadyLoading = catalogsLoading.putIfAbsent(artistKey, loading);
+    if (alreadyLoading != null) {
+      return alreadyLoading.join();
+    }
+    try {
+      // Another load of this artist may have finished between the cache lookup and claiming the slot
+      catalog = catalogs.get(artistKey);
+      if (catalog != null) {
+        loading.complete(catalog);
+        return catalog;
+      }
+      if (failedCatalogs.get(artistKey) != null) {
+        catalogFailuresSkipped.incrementAndGet();
+        loading.complete(Catalog.EMPTY);
+        return Catalog.EMPTY;
+      }
+
+      catalog = loadCatalog(artist);
+      if (catalog == null) {
+        // Temporary failure, don't try again until the failure has expired
+        catalogFailures.incrementAndGet();
+        failedCatalogs.put(artistKey, true);
+        catalog = Catalog.EMPTY;
+      } else {
+        catalogs.put(artistKey, catalog);
+      }
+      loading.complete(catalog);
+      return catalog;
+    } catch (RuntimeException e) {
+      loading.completeExceptionally(e);
+      throw e;
+    } finally {
+      catalogsLoading.remove(artistKey);
+    }
+  }
+
+  /**
+   * @return the catalog, or null if it couldn't be loaded right now
+   */
+  private Catalog loadCatalog(ArtistIdentityCache.SpotifyArtist artist) {
+    try {
+      List<AlbumSimplified> albums = executePaging(offset -> SpotifyCall.execute(spotifyApi.getArtistsAlbums(artist.getId())
+        .album_type(ALBUM_TYPES)
+        .limit(ALBUMS_PAGE_SIZE)
+        .offset(offset)), maxAlbums);
+
+      Map<String, AlbumSimplified> albumsById = new HashMap<>();
+      for (AlbumSimplified album : albums) {
+        albumsById.put(album.getId(), album);
+      }
+
+      List<Track> tracks = new ArrayList<>();
+      for (int i = 0; i < albums.size(); i += SEVERAL_ALBUMS_LIMIT) {
+        String[] albumIds = albums.subList(i, Math.min(albums.size(), i + SEVERAL_ALBUMS_LIMIT)).stream()
+          .map(AlbumSimplified::getId)
+          .toArray(String[]::new);
+        Album[] fullAlbums = execute(() -> SpotifyCall.execute(spotifyApi.getSeveralAlbums(albumIds)));
+        for (Album fullAlbum : fullAlbums) {
+          if (fullAlbum != null && fullAlbum.getTracks() != null) {
+            AlbumSimplified album = albumsById.get(fullAlbum.getId());
+            for (TrackSimplified trackSimplified : getAlbumTracks(fullAlbum)) {
+              tracks.add(toTrack(trackSimplified, album));
+            }
+          }
+        }
+      }
+
+      catalogsLoaded.incrementAndGet();
+      logger.info(String.format("Loaded artist catalog for %s (%d albums, %d tracks)", artist.getName(), albums.size(), tracks.size()));
+      return new Catalog(tracks);
+    } catch (SpotifyApiException e) {
+      logger.error("Failed to load artist catalog for " + artist.getName() + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * The full albums only come with the first page of their tracks, the rest (of very long albums) is fetched separately.
+   */
+  private List<TrackSimplified> getAlbumTracks(Album fullAlbum) {
+    Paging<TrackSimplified> firstPage = fullAlbum.getTracks();
+    List<TrackSimplified> albumTracks = new ArrayList<>(Arrays.asList(firstPage.getItems()));
+    if (firstPage.getNext() != null) {
+      int firstPageSize = albumTracks.size();
+      albumTracks.addAll(executePaging(offset -> SpotifyCall.execute(spotifyApi.getAlbumsTracks(fullAlbum.getId())
+        .limit(ALBUM_TRACKS_PAGE_SIZE)
+        .offset(firstPageSize + offset)), Integer.MAX_VALUE));
+    }
+    return albumTracks;
+  }
+
+  private <T> T execute(Supplier<T> spotifyCall) {
+    catalogRequests.incrementAndGet();
+    return spotifyRateLimiter.execute(spotifyCall);
+  }
+
+  private <T> List<T> executePaging(IntFunction<Paging<T>> pageCall, int maxItems) {
+    return spotifyRateLimiter.executePaging(offset -> {
+      catalogRequests.incrementAndGet();
+      return pageCall.apply(offset);
+    }, maxItems);
+  }
+
+  /**
+   * The album endpoints only return simplified tracks, which are turned into full tracks here
+   * (minus the popularity), so they can be treated just like search results.
+   */
+  private static Track toTrack(TrackSimplified trackSimplified, AlbumSimplified album) {
+    return new Track.Builder()
+      .setId(trackSimplified.getId())
+      .setName(trackSimplified.getName())
+      .setUri(trackSimplified.getUri())
+      .setHref(trackSimplified.getHref())
+      .setArtists(trackSimplified.getArtists())
+      .setAlbum(album)
+      .setDurationMs(trackSimplified.getDurationMs())
+      .setDiscNumber(trackSimplified.getDiscNumber())
+      .setTrackNumber(trackSimplified.getTrackNumber())
+      .setExplicit(trackSimplified.getIsExplicit())
+      .setExternalUrls(trackSimplified.getExternalUrls())
+      .build();
+  }
+
+  /**
+   * The title keys under which a track or song is indexed: the full purified title and the purified
+   * main part before any brackets or dashes (e.g. "Paranoid" for "Paranoid - 2009 Remaster").
+   */
+  private static Set<String> titleKeys(String title) {
+    Set<String> titleKeys = Collections.newSetFromMap(new LinkedHashMap<>());
+    titleKeys.add(SetlistUtils.purifyString(title));
+    int mainPartEnd = title.length();
+    for (char separator : new char[]{'-', '(', '['}) {
+      int separatorIndex = title.indexOf(separator);
+      if (separatorIndex > 0) {
+        mainPartEnd = Math.min(mainPartEnd, separatorIndex);
+      }
+    }
+    titleKeys.add(SetlistUtils.purifyString(title.substring(0, mainPartEnd)));
+    titleKeys.add(SetlistUtils.extractCoreTitle(title, true));
+    titleKeys.remove("");
+    return titleKeys;
+  }
+
+  @Override
+  public String getStatsName() {
+    return "artistCatalog";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>(catalogs.getStats());
+    stats.put("enabled", enabled);
+    stats.put("catalogsLoaded", catalogsLoaded.get());
+    stats.put("catalogRequests", catalogRequests.get());
+    stats.put("catalogFailures", catalogFailures.get());
+    stats.put("catalogFailuresSkipped", catalogFailuresSkipped.get());
+    return stats;
+  }
+
+  private static class Catalog {
+    private static final Catalog EMPTY = new Catalog(List.of());
+
+    private final Map<String, List<TrackCandidate>> candidatesByTitle;
+    private final int trackCount;
+
+    Catalog(List<Track> tracks) {
+      this.trackCount = tracks.size();
+      this.candidatesByTitle = new HashMap<>();
+      for (Track track : tracks) {
+        TrackCandidate candidate = new TrackCandidate(track);
+        for (String titleKey : titleKeys(track.getName())) {
+          candidatesByTitle.computeIfAbsent(titleKey, key -> new ArrayList<>()).add(candidate);
+        }
+      }
+    }
+
+    int getTrackCount() {
+      return trackCount;
+    }
+
+    List<TrackCandidate> findCandidates(String songName) {
+      Set<TrackCandidate> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+      List<TrackCandidate> orderedCandidates = new ArrayList<>();
+      for (String titleKey : titleKeys(songName)) {
+        for (TrackCandidate candidate : candidatesByTitle.getOrDefault(titleKey, List.of())) {
+          if (candidates.add(candidate)) {
+            orderedCandidates.add(candidate);
+          }
+        }
+      }
+      return orderedCandidates;
+    }
+  }
+}
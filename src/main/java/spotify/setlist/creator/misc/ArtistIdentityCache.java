@@ -0,0 +1,237 @@
+package spotify.setlist.creator.misc;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.Artist;
+import spotify.api.SpotifyCall;
+import spotify.api.events.SpotifyApiException;
+import spotify.setlist.util.ExpiringLruCache;
+import spotify.setlist.util.SetlistUtils;
+import spotify.setlist.util.StatsProvider;
+import spotify.util.SpotifyLogger;
+
+/**
+ * Maps setlist.fm artists to their Spotify artist. Artists are identified by their MusicBrainz ID where
+ * setlist.fm provides one, otherwise by their normalized name. Spotify itself doesn't know about MBIDs,
+ * so the candidates are found via an artist search: every Spotify artist with the same name.
+ * <p>
+ * If there's only one such artist, that's the one. If there are several namesakes, the artist stays unresolved
+ * (and songs are matched by name, as usual) until there's evidence which of them it is: every song that gets
+ * matched by name counts as a vote for the artist of the matched track. Once a namesake has collected enough votes,
+ * and more than all the others combined, the artist is resolved to it.
+ * <p>
+ * Artists that can't be resolved are cached as well, so they aren't searched over and over again.
+ * Concurrent resolves of the same artist (e.g. from the parallel song searches) share a single search.
+ */
+@Component
+public class ArtistIdentityCache implements StatsProvider {
+  private static final String MAX_SIZE_ENV = "setlist_bot.artist_identity_max_size";
+  private static final String TTL_DAYS_ENV = "setlist_bot.artist_identity_ttl_days";
+  private static final int DEFAULT_MAX_SIZE = 10000;
+  private static final int DEFAULT_TTL_DAYS = 7;
+
+  /**
+   * How many songs must have been matched to the same namesake before it's trusted
+   */
+  private static final int MIN_EVIDENCE_VOTES = 3;
+
+  private final SpotifyApi spotifyApi;
+  private final SpotifyRateLimiter spotifyRateLimiter;
+  private final SpotifyLogger logger;
+  private final ExpiringLruCache<String, Identity> cache;
+  private final Map<String, CompletableFuture<Identity>> resolving;
+
+  private final AtomicLong resolved;
+  private final AtomicLong ambiguous;
+  private final AtomicLong unresolved;
+  private final AtomicLong resolvedByEvidence;
+  private final AtomicLong coalesced;
+
+  ArtistIdentityCache(SpotifyApi spotifyApi, SpotifyRateLimiter spotifyRateLimiter, SpotifyLogger logger, Environment environment) {
+    this.spotifyApi = spotifyApi;
+    this.spotifyRateLimiter = spotifyRateLimiter;
+    this.logger = logger;
+
+    int maxSize = environment.getProperty(MAX_SIZE_ENV, Integer.class, DEFAULT_MAX_SIZE);
+    int ttlDays = environment.getProperty(TTL_DAYS_ENV, Integer.class, DEFAULT_TTL_DAYS);
+    this.cache = new ExpiringLruCache<>(maxSize, Duration.ofDays(ttlDays));
+    this.resolving = new ConcurrentHashMap<>();
+
+    this.resolved = new AtomicLong();
+    this.ambiguous = new AtomicLong();
+    this.unresolved = new AtomicLong();
+    this.resolvedByEvidence = new AtomicLong();
+    this.coalesced = new AtomicLong();
+  }
+
+  /**
+   * Get the Spotify artist for the given setlist.fm artist.
+   *
+   * @param artistMbid the MusicBrainz ID of the artist (may be null)
+   * @param artistName the name of the artist
+   * @return the Spotify artist, or empty if it couldn't be resolved (yet)
+   */
+  public Optional<SpotifyArtist> resolve(String artistMbid, String artistName) {
+    Identity identity = getIdentity(toKey(artistMbid, artistName), artistName);
+    return identity != null ? identity.getArtist() : Optional.empty();
+  }
+
+  /**
+   * Record that a song of the given setlist.fm artist has been matched (by name) to a track of the given Spotify artist.
+   * This is what decides between multiple Spotify artists of the same name.
+   *
+   * @param artistMbid the MusicBrainz ID of the artist (may be null)
+   * @param artistName the name of the artist
+   * @param spotifyArtistId the Spotify ID of the first artist of the matched track
+   */
+  public void recordEvidence(String artistMbid, String artistName, String spotifyArtistId) {
+    Identity identity = cache.get(toKey(artistMbid, artistName));
+    if (identity != null && spotifyArtistId != null && identity.vote(spotifyArtistId)) {
+      resolvedByEvidence.incrementAndGet();
+      logger.debug(String.format("Resolved ambiguous artist %s to %s by evidence", artistName, spotifyArtistId));
+    }
+  }
+
+  private static String toKey(String artistMbid, String artistName) {
+    return artistMbid != null ? artistMbid : "name:" + SetlistUtils.purifyString(artistName);
+  }
+
+  /**
+   * @return the identity, or null if it couldn't be looked up right now
+   */
+  private Identity getIdentity(String key, String artistName) {
+    Identity identity = cache.get(key);
+    if (identity != null) {
+      return identity;
+    }
+
+    CompletableFuture<Identity> loading = new CompletableFuture<>();
+    CompletableFuture<Identity> alreadyLoading = resolving.putIfAbsent(key, loading);
+    if (alreadyLoading != null) {
+      coalesced.incrementAndGet();
+      return alreadyLoading.join();
+    }
+    try {
+      // Another resolve of this artist may have finished between the cache lookup and claiming the slot
+      identity = cache.get(key);
+      if (identity == null) {
+        identity = new Identity(searchNamesakes(artistName));
+        cache.put(key, identity);
+        if (identity.namesakes.isEmpty()) {
+          unresolved.incrementAndGet();
+        } else if (identity.namesakes.size() == 1) {
+          resolved.incrementAndGet();
+        } else {
+          ambiguous.incrementAndGet();
+        }
+      }
+      loading.complete(identity);
+      return identity;
+    } catch (SpotifyApiException e) {
+      // Don't cache temporary failures
+      logger.warning("Failed to resolve Spotify artist for " + artistName + ": " + e.getMessage());
+      loading.complete(null);
+      return null;
+    } catch (RuntimeException e) {
+      loading.completeExceptionally(e);
+      throw e;
+    } finally {
+      resolving.remove(key);
+    }
+  }
+
+  private List<SpotifyArtist> searchNamesakes(String artistName) {
+    Artist[] artists = spotifyRateLimiter.execute(() -> SpotifyCall.execute(spotifyApi.searchArtists(artistName))).getItems();
+    String artistNamePurified = SetlistUtils.purifyString(artistName);
+    return Arrays.stream(artists)
+      .filter(artist -> artist.getName().equalsIgnoreCase(artistName) || SetlistUtils.purifyString(artist.getName()).equals(artistNamePurified))
+      .map(artist -> new SpotifyArtist(artist.getId(), artist.getName()))
+      .collect(Collectors.toList());
+  }
+
+  @Override
+  public String getStatsName() {
+    return "artistIdentityCache";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>(cache.getStats());
+    stats.put("resolved", resolved.get());
+    stats.put("ambiguous", ambiguous.get());
+    stats.put("unresolved", unresolved.get());
+    stats.put("resolvedByEvidence", resolvedByEvidence.get());
+    stats.put("coalesced", coalesced.get());
+    return stats;
+  }
+
+  private static class Identity {
+    private final List<SpotifyArtist> namesakes;
+    private final Map<String, Integer> votes;
+    private volatile SpotifyArtist artistByEvidence;
+
+    Identity(List<SpotifyArtist> namesakes) {
+      this.namesakes = namesakes;
+      this.votes = new HashMap<>();
+    }
+
+    Optional<SpotifyArtist> getArtist() {
+      if (namesakes.size() == 1) {
+        return Optional.of(namesakes.get(0));
+      }
+      return Optional.ofNullable(artistByEvidence);
+    }
+
+    /**
+     * @return true if this vote resolved the artist
+     */
+    synchronized boolean vote(String spotifyArtistId) {
+      if (namesakes.size() < 2 || namesakes.stream().noneMatch(namesake -> namesake.getId().equals(spotifyArtistId))) {
+        return false;
+      }
+      int artistVotes = votes.merge(spotifyArtistId, 1, Integer::sum);
+      int otherVotes = votes.values().stream().mapToInt(Integer::intValue).sum() - artistVotes;
+      if (artistVotes >= MIN_EVIDENCE_VOTES && artistVotes > otherVotes) {
+        SpotifyArtist previous = artistByEvidence;
+        artistByEvidence = namesakes.stream().filter(namesake -> namesake.getId().equals(spotifyArtistId)).findFirst().orElse(null);
+        return previous == null;
+      }
+      return false;
+    }
+  }
+
+  public static class SpotifyArtist {
+    private final String id;
+    private final String name;
+
+    SpotifyArtist(String id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return the name of the artist as it's spelled on Spotify
+     */
+    public String getName() {
+      return name;
+    }
+  }
+}
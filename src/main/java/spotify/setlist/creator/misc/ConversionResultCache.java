@@ -0,0 +1,91 @@
+package spotify.setlist.creator.misc;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import spotify.setlist.data.ConversionKey;
+import spotify.setlist.data.SetlistCreationResponse;
+import spotify.setlist.util.ExpiringLruCache;
+import spotify.setlist.util.StatsProvider;
+
+/**
+ * Keeps the finished results of recent conversions, so that repeated requests for the same setlist
+ * with the same options can be answered directly, without running the whole conversion again.
+ * The TTL is kept short on purpose, as fresh setlists tend to get edited a lot in the first hours.
+ */
+@Component
+public class ConversionResultCache implements StatsProvider {
+  private static final String TTL_SECONDS_ENV = "setlist_bot.conversion_cache_ttl_seconds";
+  private static final String MAX_SIZE_ENV = "setlist_bot.conversion_cache_max_size";
+  private static final int DEFAULT_TTL_SECONDS = 600;
+  private static final int DEFAULT_MAX_SIZE = 1000;
+
+  private final ExpiringLruCache<ConversionKey, CachedConversion> cache;
+  private final long ttlMillis;
+
+  ConversionResultCache(Environment environment) {
+    int ttlSeconds = environment.getProperty(TTL_SECONDS_ENV, Integer.class, DEFAULT_TTL_SECONDS);
+    int maxSize = environment.getProperty(MAX_SIZE_ENV, Integer.class, DEFAULT_MAX_SIZE);
+    this.ttlMillis = Duration.ofSeconds(ttlSeconds).toMillis();
+    this.cache = new ExpiringLruCache<>(maxSize, Duration.ofSeconds(ttlSeconds));
+  }
+
+  /**
+   * Get the cached conversion for the given key.
+   *
+   * @param conversionKey the setlist.fm ID and options
+   * @return the cached conversion, or empty if there is none
+   */
+  public Optional<CachedConversion> get(ConversionKey conversionKey) {
+    return Optional.ofNullable(cache.get(conversionKey));
+  }
+
+  public void put(ConversionKey conversionKey, SetlistCreationResponse setlistCreationResponse) {
+    cache.put(conversionKey, new CachedConversion(setlistCreationResponse, System.currentTimeMillis(), ttlMillis));
+  }
+
+  @Override
+  public String getStatsName() {
+    return "conversionResultCache";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    return cache.getStats();
+  }
+
+  public static class CachedConversion {
+    private final SetlistCreationResponse response;
+    private final long createdAt;
+    private final long expiresAt;
+
+    CachedConversion(SetlistCreationResponse response, long createdAt, long ttlMillis) {
+      this.response = response;
+      this.createdAt = createdAt;
+      this.expiresAt = createdAt + ttlMillis;
+    }
+
+    public SetlistCreationResponse getResponse() {
+      return response;
+    }
+
+    public long getCreatedAt() {
+      return createdAt;
+    }
+
+    public long getExpiresAt() {
+      return expiresAt;
+    }
+
+    /**
+     * @return an identifier that changes whenever the cached result changes
+     */
+    public String getETag() {
+      return response.getPlaylistId() + "-" + Long.toHexString(createdAt);
+    }
+  }
+}
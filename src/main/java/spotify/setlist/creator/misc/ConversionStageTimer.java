@@ -0,0 +1,137 @@
+package spotify.setlist.creator.misc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+import spotify.setlist.util.StatsProvider;
+
+/**
+ * Measures how long the individual stages of a conversion take, both for the single conversion (to be logged)
+ * and aggregated over all conversions (for the stats). Since some stages run concurrently,
+ * the stage durations of a conversion don't necessarily add up to its total duration.
+ */
+@Component
+public class ConversionStageTimer implements StatsProvider {
+  private final Map<String, StageStats> stageStats;
+
+  ConversionStageTimer() {
+    this.stageStats = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @return new timings for a single conversion
+   */
+  public Timings start() {
+    return new Timings();
+  }
+
+  private void record(String stage, long millis) {
+    stageStats.computeIfAbsent(stage, s -> new StageStats()).record(millis);
+  }
+
+  @Override
+  public String getStatsName() {
+    return "conversionStages";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stageStats.entrySet().stream()
+      .sorted(Map.Entry.comparingByKey())
+      .forEach(entry -> stats.put(entry.getKey(), entry.getValue().getStats()));
+    return stats;
+  }
+
+  public class Timings {
+    private final Map<String, Long> stageMillis;
+
+    private Timings() {
+      this.stageMillis = new LinkedHashMap<>();
+    }
+
+    /**
+     * Run the given stage in the current thread and record its duration.
+     *
+     * @param stage the stage name
+     * @param work the work of the stage
+     * @param <T> the result type
+     * @return the result of the stage
+     */
+    public <T> T time(String stage, Supplier<T> work) {
+      long start = System.currentTimeMillis();
+      try {
+        return work.get();
+      } finally {
+        record(stage, System.currentTimeMillis() - start);
+      }
+    }
+
+    /**
+     * Run the given stage on the given executor and record its duration once it's done.
+     *
+     * @param stage the stage name
+     * @param work the work of the stage
+     * @param executor the executor to run the stage on
+     * @param <T> the result type
+     * @return the future result of the stage
+     */
+    public <T> CompletableFuture<T> timeAsync(String stage, Supplier<T> work, Executor executor) {
+      return CompletableFuture.supplyAsync(() -> time(stage, work), executor);
+    }
+
+    /**
+     * Record the duration of a stage that has been measured elsewhere.
+     *
+     * @param stage the stage name
+     * @param millis the duration in milliseconds
+     */
+    public void record(String stage, long millis) {
+      synchronized (stageMillis) {
+        stageMillis.put(stage, millis);
+      }
+      ConversionStageTimer.this.record(stage, millis);
+    }
+
+    /**
+     * @return the recorded stages in the order they finished, e.g. "fetch=120ms, search=2400ms"
+     */
+    @Override
+    public String toString() {
+      synchronized (stageMillis) {
+        return stageMillis.entrySet().stream()
+          .map(entry -> entry.getKey() + "=" + entry.getValue() + "ms")
+          .collect(Collectors.joining(", "));
+      }
+    }
+  }
+
+  private static class StageStats {
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    void record(long millis) {
+      count.incrementAndGet();
+      totalMillis.addAndGet(millis);
+      maxMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    Map<String, Object> getStats() {
+      Map<String, Object> stats = new LinkedHashMap<>();
+      long n = count.get();
+      stats.put("count", n);
+      stats.put("avgMillis", n > 0 ? totalMillis.get() / n : 0);
+      stats.put("maxMillis", maxMillis.get());
+      return stats;
+    }
+  }
+}
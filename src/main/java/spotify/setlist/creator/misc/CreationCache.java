@@ -1,20 +1,38 @@
 package spotify.setlist.creator.misc;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import javax.annotation.PreDestroy;
+
+import org.springframework.core.env.Environment;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import com.google.gson.Gson;
+
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.IPlaylistItem;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
 import se.michaelthelin.spotify.model_objects.specification.Playlist;
 import se.michaelthelin.spotify.model_objects.specification.PlaylistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
@@ -23,11 +41,12 @@ import spotify.api.SpotifyCall;
 import spotify.api.events.SpotifyApiException;
 import spotify.services.PlaylistService;
 import spotify.setlist.data.TrackSearchResult;
+import spotify.setlist.util.StatsProvider;
 import spotify.util.SpotifyLogger;
 
 @EnableScheduling
 @Component
-public class CreationCache {
+public class CreationCache implements StatsProvider {
   /**
    * Limit of playlists a single Spotify account can actually have. This doesn't appear to be documented anywhere,
    * I learned this the hard way when the bot stopped working one day at exactly this amount of playlists.
@@ -39,94 +58,499 @@ public class CreationCache {
    */
   public static final int SPOTIFY_PLAYLIST_LIMIT_TARGET = SPOTIFY_PLAYLIST_LIMIT_REAL - 1000;
 
+  private static final String SNAPSHOT_FILE_NAME = "creation-cache.json";
+  private static final String FORCE_FULL_RESYNC_ENV = "setlist_bot.force_full_resync";
+  private static final int PLAYLISTS_PAGE_SIZE = 50;
+
+  /**
+   * Number of playlist pages, spread evenly across the account, that are checked against the cache after an incremental sync
+   */
+  private static final int SYNC_VALIDATION_SAMPLES = 3;
+
   private final SpotifyApi spotifyApi;
   private final PlaylistService playlistService;
+  private final SpotifyRateLimiter spotifyRateLimiter;
+  private final RetryPolicy retryPolicy;
   private final SpotifyLogger logger;
+  private final Gson gson;
+
+  /**
+   * The index currently used to answer requests. During a full resync, a new index is built on the side
+   * and swapped in once it's complete, so requests never see a half-built cache.
+   */
+  private volatile Index index;
 
   /**
-   * Maps setlist names to lists of playlist IDs
-   * (in case one setlist name has different setlists, such as different setlists each night despite being on the same tour)
+   * Playlists that were created while a full resync was running, to be replayed into the new index before swapping
    */
-  private final Map<String, List<String>> createdSetlists;
+  private final List<String[]> pendingAdditions;
+  private final Object indexSwapLock;
+
+  private volatile boolean initialized;
+
+  /**
+   * Set once at startup by {@link CreationCache#FORCE_FULL_RESYNC_ENV} and cleared by the next housekeeping run,
+   * so that a forgotten environment variable doesn't turn every single run into a full resync
+   */
+  private final AtomicBoolean fullResyncRequested;
+
+  private volatile HousekeepingState housekeepingState;
+  private final AtomicInteger housekeepingProgress;
+  private volatile int housekeepingTotal;
+  private volatile long lastHousekeepingCompletedAt;
 
   CreationCache (SpotifyApi spotifyApi,
     PlaylistService playlistService,
-    SpotifyLogger logger) {
+    SpotifyRateLimiter spotifyRateLimiter,
+    RetryPolicy retryPolicy,
+    SpotifyLogger logger,
+    Environment environment) {
     this.spotifyApi = spotifyApi;
     this.playlistService = playlistService;
+    this.spotifyRateLimiter = spotifyRateLimiter;
+    this.retryPolicy = retryPolicy;
     this.logger = logger;
+    this.gson = new Gson();
+
+    this.index = new Index();
+    this.pendingAdditions = new ArrayList<>();
+    this.indexSwapLock = new Object();
+
+    this.housekeepingState = HousekeepingState.IDLE;
+    this.housekeepingProgress = new AtomicInteger();
+
+    this.fullResyncRequested = new AtomicBoolean("true".equals(environment.getProperty(FORCE_FULL_RESYNC_ENV)));
+    if (fullResyncRequested.get()) {
+      logger.warning("A full resync of the creation cache has been requested and will run on the next housekeeping");
+    }
 
-    this.createdSetlists = new ConcurrentHashMap<>();
+    loadSnapshot();
   }
 
   @Scheduled(initialDelay = 1, fixedDelay = 1, timeUnit = TimeUnit.DAYS)
-  public void refreshCreatedSetlistsCounterAndRemoveDeadPlaylists() {
-    // Housekeeping:
-    // Thankfully, the results of getCurrentUsersPlaylists are already in chronological order from newest to oldest,
-    // so all we need to do is start at the bottom and delete enough old playlists until we land below the target limit of 10000.
-    int playlistCount = SpotifyCall.execute(spotifyApi.getListOfCurrentUsersPlaylists()).getTotal();
-    int playlistOverflowCount = playlistCount - SPOTIFY_PLAYLIST_LIMIT_TARGET;
-    if (playlistOverflowCount > 0) {
-      logger.warning("Deleting " + playlistOverflowCount + " old playlists!");
-      List<PlaylistSimplified> overflownPlaylists = SpotifyCall.executePaging(spotifyApi.getListOfCurrentUsersPlaylists().offset(SPOTIFY_PLAYLIST_LIMIT_TARGET));
-      if (!overflownPlaylists.isEmpty()) {
-        // This part used to be done with the SpotifyOptimizedExecutorService, but for some reason it would lead to a bunch of
-        // "Forbidden" and "Insufficient client scope" exceptions. My guess is that Spotify doesn't like it when too many playlists
-        // are unfollowed at once, so I had to simplify it into a foreach loop. That seemed to have resolved the issue.
-        for (PlaylistSimplified pl : overflownPlaylists) {
-          try {
-            playlistService.deletePlaylist(pl);
-          } catch (SpotifyApiException e) {
-            logger.error("Failed to unfollow playlist during housekeeping: " + pl.getName());
-            e.printStackTrace();
+  public synchronized void refreshCreatedSetlistsCounterAndRemoveDeadPlaylists() {
+    try {
+      // Housekeeping:
+      // Thankfully, the results of getCurrentUsersPlaylists are already in chronological order from newest to oldest,
+      // so all we need to do is start at the bottom and delete enough old playlists until we land below the target limit of 10000.
+      int playlistCount = spotifyRateLimiter.execute(() -> SpotifyCall.execute(spotifyApi.getListOfCurrentUsersPlaylists())).getTotal();
+      int playlistOverflowCount = playlistCount - SPOTIFY_PLAYLIST_LIMIT_TARGET;
+      if (playlistOverflowCount > 0) {
+        logger.warning("Deleting " + playlistOverflowCount + " old playlists!");
+        startHousekeepingPhase(HousekeepingState.DELETING_OLD_PLAYLISTS, playlistOverflowCount);
+        List<PlaylistSimplified> overflownPlaylists = spotifyRateLimiter.executePaging(offset -> SpotifyCall.execute(spotifyApi.getListOfCurrentUsersPlaylists()
+          .limit(PLAYLISTS_PAGE_SIZE)
+          .offset(SPOTIFY_PLAYLIST_LIMIT_TARGET + offset)), playlistOverflowCount);
+        if (!overflownPlaylists.isEmpty()) {
+          // This part used to be done with the SpotifyOptimizedExecutorService, but for some reason it would lead to a bunch of
+          // "Forbidden" and "Insufficient client scope" exceptions. My guess is that Spotify doesn't like it when too many playlists
+          // are unfollowed at once, so I had to simplify it into a foreach loop. That seemed to have resolved the issue.
+          Set<String> deletedPlaylistIds = new HashSet<>();
+          for (PlaylistSimplified pl : overflownPlaylists) {
+            try {
+              retryPolicy.run(RetryPolicy.Operation.DELETE_PLAYLIST, () -> spotifyRateLimiter.run(() -> playlistService.deletePlaylist(pl)));
+              deletedPlaylistIds.add(pl.getId());
+            } catch (SpotifyApiException e) {
+              logger.error("Failed to unfollow playlist during housekeeping: " + pl.getName());
+              e.printStackTrace();
+            }
+            housekeepingProgress.incrementAndGet();
           }
+          index.removeAll(deletedPlaylistIds);
+          logger.warning("Housekeeping done!");
         }
-        logger.warning("Housekeeping done!");
       }
+
+      // Update the creation cache. Usually, only the playlists created since the last snapshot need to be fetched.
+      // Only if that's not possible, the entire cache gets rebuilt (which at 10000 playlists takes an INSANE amount of time!)
+      boolean forceFullResync = fullResyncRequested.getAndSet(false);
+      if (forceFullResync || !initialized || !incrementalResync()) {
+        fullResync();
+      }
+      initialized = true;
+      saveSnapshot();
+      lastHousekeepingCompletedAt = System.currentTimeMillis();
+    } finally {
+      housekeepingState = HousekeepingState.IDLE;
     }
+  }
 
-    // Build the creation cache (be warned: at 10000 playlists, this takes an INSANE amount of time!)
-    List<PlaylistSimplified> allUserPlaylists = playlistService.getCurrentUsersPlaylists();
-    createdSetlists.clear();
-    for (PlaylistSimplified ps : allUserPlaylists) {
-      String name = ps.getName();
-      String id = ps.getId();
-      addSetlistToCache(name, id);
+  /**
+   * Rebuild the entire creation cache from scratch by fetching every single playlist of the account.
+   * The current cache stays fully usable in the meantime and is only replaced once the new one is complete.
+   */
+  private synchronized void fullResync() {
+    logger.info("Rebuilding the creation cache from scratch...");
+    synchronized (indexSwapLock) {
+      pendingAdditions.clear();
+      startHousekeepingPhase(HousekeepingState.FULL_RESYNC, 0);
+    }
+
+    Index newIndex = new Index();
+    int offset = 0;
+    while (true) {
+      Paging<PlaylistSimplified> page = fetchPlaylistsPage(offset);
+      housekeepingTotal = page.getTotal();
+      PlaylistSimplified[] playlists = page.getItems();
+      if (playlists.length == 0) {
+        break;
+      }
+      for (PlaylistSimplified ps : playlists) {
+        newIndex.add(ps.getName(), ps.getId());
+      }
+      offset += playlists.length;
+      housekeepingProgress.set(offset);
+    }
+
+    synchronized (indexSwapLock) {
+      for (String[] pendingAddition : pendingAdditions) {
+        newIndex.add(pendingAddition[0], pendingAddition[1]);
+      }
+      pendingAdditions.clear();
+
+      // Fingerprints of playlists that still exist stay valid, all others can go
+      newIndex.adoptFingerprints(index);
+      index = newIndex;
+      housekeepingState = HousekeepingState.IDLE;
+    }
+  }
+
+  /**
+   * Fetch the newest playlists page by page, until a playlist is reached that's already known.
+   *
+   * @return true if the cache is in sync with Spotify afterwards, false if a full resync is required
+   */
+  private boolean incrementalResync() {
+    startHousekeepingPhase(HousekeepingState.INCREMENTAL_SYNC, 0);
+    List<PlaylistSimplified> newPlaylists = new ArrayList<>();
+    int spotifyPlaylistCount = 0;
+    int offset = 0;
+    boolean reachedKnownPlaylist = false;
+    while (!reachedKnownPlaylist) {
+      Paging<PlaylistSimplified> page = fetchPlaylistsPage(offset);
+      spotifyPlaylistCount = page.getTotal();
+      PlaylistSimplified[] playlists = page.getItems();
+      if (playlists.length == 0) {
+        break;
+      }
+      for (PlaylistSimplified ps : playlists) {
+        if (index.contains(ps.getId())) {
+          reachedKnownPlaylist = true;
+          break;
+        }
+        newPlaylists.add(ps);
+      }
+      offset += playlists.length;
+      housekeepingProgress.set(offset);
+    }
+
+    for (PlaylistSimplified ps : newPlaylists) {
+      addSetlistToCache(ps.getName(), ps.getId());
+    }
+
+    // If playlists were deleted or modified outside the bot, the counts won't line up anymore
+    int cachedPlaylistCount = index.size();
+    if (cachedPlaylistCount != spotifyPlaylistCount) {
+      logger.warning("Creation cache is out of sync (" + cachedPlaylistCount + " cached, " + spotifyPlaylistCount + " on Spotify)");
+      return false;
+    }
+    if (!sampledPagesAreKnown(spotifyPlaylistCount)) {
+      return false;
+    }
+    logger.info("Creation cache synced incrementally (" + newPlaylists.size() + " new playlists)");
+    return true;
+  }
+
+  /**
+   * Matching counts alone don't prove that the cache is in sync, a playlist that was deleted outside the bot
+   * and one that's missing from the cache would cancel each other out. So a few pages spread across the account
+   * (always including the oldest one, where a stale snapshot diverges first) are fetched, and every playlist
+   * on them must be known to the cache.
+   *
+   * @param spotifyPlaylistCount the total number of playlists on Spotify
+   * @return true if every sampled playlist is in the cache
+   */
+  private boolean sampledPagesAreKnown(int spotifyPlaylistCount) {
+    Set<Integer> offsets = new LinkedHashSet<>();
+    for (int i = SYNC_VALIDATION_SAMPLES; i > 0; i--) {
+      offsets.add(Math.max(0, (int) ((long) spotifyPlaylistCount * i / SYNC_VALIDATION_SAMPLES) - PLAYLISTS_PAGE_SIZE));
+    }
+    for (int offset : offsets) {
+      for (PlaylistSimplified ps : fetchPlaylistsPage(offset).getItems()) {
+        if (!index.contains(ps.getId())) {
+          logger.warning("Creation cache is out of sync (unknown playlist " + ps.getId() + " at offset " + offset + ")");
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private Paging<PlaylistSimplified> fetchPlaylistsPage(int offset) {
+    return spotifyRateLimiter.execute(() -> SpotifyCall.execute(spotifyApi.getListOfCurrentUsersPlaylists().limit(PLAYLISTS_PAGE_SIZE).offset(offset)));
+  }
+
+  private void startHousekeepingPhase(HousekeepingState state, int total) {
+    housekeepingProgress.set(0);
+    housekeepingTotal = total;
+    housekeepingState = state;
+  }
+
+  @Override
+  public String getStatsName() {
+    return "creationCache";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("playlists", index.size());
+    stats.put("housekeepingState", housekeepingState);
+    stats.put("housekeepingProgress", housekeepingProgress.get());
+    stats.put("housekeepingTotal", housekeepingTotal);
+    stats.put("lastHousekeepingCompletedAt", lastHousekeepingCompletedAt);
+    return stats;
+  }
+
+  @PreDestroy
+  public void saveSnapshot() {
+    if (!initialized) {
+      return;
+    }
+    try {
+      Index currentIndex = index;
+      Snapshot snapshot = new Snapshot(currentIndex.createdSetlists, currentIndex.trackFingerprints);
+      Path temp = Paths.get(SNAPSHOT_FILE_NAME + ".tmp");
+      Files.writeString(temp, gson.toJson(snapshot));
+      Files.move(temp, Paths.get(SNAPSHOT_FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.error("Failed to write creation cache snapshot: " + e.getMessage());
+    }
+  }
+
+  private void loadSnapshot() {
+    Path path = Paths.get(SNAPSHOT_FILE_NAME);
+    if (!Files.exists(path)) {
+      return;
+    }
+    try {
+      Snapshot snapshot = gson.fromJson(Files.readString(path), Snapshot.class);
+      if (snapshot == null || snapshot.createdSetlists == null || snapshot.trackFingerprints == null) {
+        throw new IllegalStateException("Snapshot is incomplete");
+      }
+      Index restoredIndex = new Index();
+      for (Map.Entry<String, List<String>> entry : snapshot.createdSetlists.entrySet()) {
+        for (String id : entry.getValue()) {
+          restoredIndex.add(entry.getKey(), id);
+        }
+      }
+      restoredIndex.trackFingerprints.putAll(snapshot.trackFingerprints);
+      index = restoredIndex;
+      initialized = true;
+      logger.info("Restored creation cache snapshot with " + restoredIndex.size() + " playlists");
+    } catch (Exception e) {
+      logger.error("Failed to read creation cache snapshot, a full resync is required: " + e.getMessage());
     }
   }
 
   public Optional<Playlist> searchForExistingSetlistPlaylist(String setlistName, List<TrackSearchResult> setlistTracks) {
-    List<String> playlistIdsForSetlistName = createdSetlists.get(setlistName);
-    if (playlistIdsForSetlistName == null || playlistIdsForSetlistName.isEmpty()) {
+    return searchForExistingSetlistPlaylist(setlistName, setlistTracks, Map.of());
+  }
+
+  /**
+   * Same as {@link CreationCache#searchForExistingSetlistPlaylist(String, List)}, but playlists that have
+   * already been fetched by {@link CreationCache#prefetchUnindexedPlaylists} aren't fetched again.
+   *
+   * @param setlistName the setlist name
+   * @param setlistTracks the tracks found for the setlist
+   * @param prefetchedPlaylists the prefetched playlists by ID
+   * @return the existing playlist with the exact same tracks, if there is one
+   */
+  public Optional<Playlist> searchForExistingSetlistPlaylist(String setlistName, List<TrackSearchResult> setlistTracks, Map<String, Playlist> prefetchedPlaylists) {
+    Index currentIndex = index;
+    List<String> playlistIdsForSetlistName = currentIndex.getPlaylistIds(setlistName);
+    if (playlistIdsForSetlistName.isEmpty()) {
       // This is the first time the playlist has been fetched
       return Optional.empty();
-    } else {
-      // Setlist name has been found again, check if the playlist already exists
-      for (String playlistId : playlistIdsForSetlistName) {
-        Playlist playlist = playlistService.getPlaylist(playlistId);
-        List<PlaylistTrack> playlistTracks = Arrays.asList(playlist.getTracks().getItems());
-        if (setlistTracks.size() == playlistTracks.size()) {
-          List<String> currentSetlistTrackIds = setlistTracks.stream()
-            .map(TrackSearchResult::getSearchResult)
-            .map(Track::getId)
-            .collect(Collectors.toList());
-          List<String> existingPlaylistTrackIds = playlistTracks.stream()
-            .map(PlaylistTrack::getTrack)
-            .map(IPlaylistItem::getId)
-            .collect(Collectors.toList());
-          if (currentSetlistTrackIds.equals(existingPlaylistTrackIds)) {
-            return Optional.of(playlist);
-          }
+    }
+
+    // Setlist name has been found again, check if the playlist already exists
+    List<String> currentSetlistTrackIds = setlistTracks.stream()
+      .map(TrackSearchResult::getSearchResult)
+      .map(Track::getId)
+      .collect(Collectors.toList());
+    int currentFingerprint = fingerprint(currentSetlistTrackIds);
+
+    // Fingerprint matches only need a single confirming fetch (in case of hash collisions or modified playlists)
+    for (String playlistId : playlistIdsForSetlistName) {
+      Integer knownFingerprint = currentIndex.trackFingerprints.get(playlistId);
+      if (knownFingerprint != null && knownFingerprint == currentFingerprint) {
+        Playlist prefetchedPlaylist = prefetchedPlaylists.get(playlistId);
+        Optional<Playlist> playlist = prefetchedPlaylist != null
+          ? Optional.of(prefetchedPlaylist).filter(p -> getTrackIds(p).equals(currentSetlistTrackIds))
+          : fetchAndIndexIfMatching(playlistId, currentSetlistTrackIds);
+        if (playlist.isPresent()) {
+          return playlist;
+        }
+      }
+    }
+
+    // Playlists that haven't been fingerprinted yet (e.g. created before the last restart) have to be fetched once
+    for (String playlistId : playlistIdsForSetlistName) {
+      if (!currentIndex.trackFingerprints.containsKey(playlistId)) {
+        Optional<Playlist> playlist = fetchAndIndexIfMatching(playlistId, currentSetlistTrackIds);
+        if (playlist.isPresent()) {
+          return playlist;
         }
       }
     }
     return Optional.empty();
   }
 
+  /**
+   * Fetch and fingerprint all playlists created under the given setlist name that haven't been fingerprinted yet.
+   * Those would have to be fetched by the search for an existing playlist anyway, but this only depends on
+   * the setlist name, so it can be done while the songs are still being searched.
+   *
+   * @param setlistName the setlist name
+   * @return the fetched playlists by ID
+   */
+  public Map<String, Playlist> prefetchUnindexedPlaylists(String setlistName) {
+    Index currentIndex = index;
+    Map<String, Playlist> prefetchedPlaylists = new LinkedHashMap<>();
+    for (String playlistId : currentIndex.getPlaylistIds(setlistName)) {
+      if (!currentIndex.trackFingerprints.containsKey(playlistId)) {
+        Playlist playlist = spotifyRateLimiter.execute(() -> playlistService.getPlaylist(playlistId));
+        putFingerprint(playlistId, getTrackIds(playlist));
+        prefetchedPlaylists.put(playlistId, playlist);
+      }
+    }
+    return prefetchedPlaylists;
+  }
+
+  private Optional<Playlist> fetchAndIndexIfMatching(String playlistId, List<String> setlistTrackIds) {
+    Playlist playlist = spotifyRateLimiter.execute(() -> playlistService.getPlaylist(playlistId));
+    List<String> existingPlaylistTrackIds = getTrackIds(playlist);
+    putFingerprint(playlistId, existingPlaylistTrackIds);
+    if (setlistTrackIds.equals(existingPlaylistTrackIds)) {
+      return Optional.of(playlist);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Fingerprints are always written to the index that's current at the time of writing, never to one captured earlier.
+   * An index that's being replaced by a full resync hands its fingerprints over while holding the same lock,
+   * so none of them get lost in the swap.
+   */
+  private void putFingerprint(String playlistId, List<String> trackIds) {
+    synchronized (indexSwapLock) {
+      index.trackFingerprints.put(playlistId, fingerprint(trackIds));
+    }
+  }
+
+  private static List<String> getTrackIds(Playlist playlist) {
+    return Arrays.stream(playlist.getTracks().getItems())
+      .map(PlaylistTrack::getTrack)
+      .map(IPlaylistItem::getId)
+      .collect(Collectors.toList());
+  }
+
+  private static int fingerprint(List<String> trackIds) {
+    return trackIds.hashCode();
+  }
+
+  /**
+   * Add a freshly created playlist to the cache, along with the fingerprint of its tracks.
+   *
+   * @param name the playlist name
+   * @param id the playlist ID
+   * @param trackIds the ordered IDs of the tracks that were added to the playlist
+   */
+  public void addSetlistToCache(String name, String id, List<String> trackIds) {
+    synchronized (indexSwapLock) {
+      addSetlistToCache(name, id);
+      putFingerprint(id, trackIds);
+    }
+  }
+
   public void addSetlistToCache(String name, String id) {
-    if (!createdSetlists.containsKey(name)) {
-      createdSetlists.put(name, new CopyOnWriteArrayList<>());
+    synchronized (indexSwapLock) {
+      index.add(name, id);
+      if (housekeepingState == HousekeepingState.FULL_RESYNC) {
+        pendingAdditions.add(new String[]{name, id});
+      }
+    }
+  }
+
+  public enum HousekeepingState {
+    IDLE,
+    DELETING_OLD_PLAYLISTS,
+    INCREMENTAL_SYNC,
+    FULL_RESYNC
+  }
+
+  private static class Index {
+    /**
+     * Maps setlist names to lists of playlist IDs
+     * (in case one setlist name has different setlists, such as different setlists each night despite being on the same tour)
+     */
+    private final Map<String, List<String>> createdSetlists = new ConcurrentHashMap<>();
+
+    /**
+     * Maps playlist IDs to the fingerprint of their ordered track IDs,
+     * so that existing playlists can be found without fetching every single one of them
+     */
+    private final Map<String, Integer> trackFingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * All playlist IDs in this index, used to detect where the already known playlists begin
+     */
+    private final Set<String> playlistIds = ConcurrentHashMap.newKeySet();
+
+    void add(String name, String id) {
+      if (playlistIds.add(id)) {
+        createdSetlists.computeIfAbsent(name, n -> new CopyOnWriteArrayList<>()).add(id);
+      }
+    }
+
+    void removeAll(Set<String> ids) {
+      if (!ids.isEmpty()) {
+        createdSetlists.values().forEach(list -> list.removeAll(ids));
+        createdSetlists.values().removeIf(List::isEmpty);
+        playlistIds.removeAll(ids);
+        trackFingerprints.keySet().removeAll(ids);
+      }
+    }
+
+    void adoptFingerprints(Index previousIndex) {
+      previousIndex.trackFingerprints.forEach((id, fingerprint) -> {
+        if (playlistIds.contains(id)) {
+          trackFingerprints.putIfAbsent(id, fingerprint);
+        }
+      });
+    }
+
+    List<String> getPlaylistIds(String name) {
+      return createdSetlists.getOrDefault(name, List.of());
+    }
+
+    boolean contains(String id) {
+      return playlistIds.contains(id);
+    }
+
+    int size() {
+      return playlistIds.size();
+    }
+  }
+
+  private static class Snapshot {
+    private final Map<String, List<String>> createdSetlists;
+    private final Map<String, Integer> trackFingerprints;
+
+    Snapshot(Map<String, List<String>> createdSetlists, Map<String, Integer> trackFingerprints) {
+      this.createdSetlists = createdSetlists;
+      this.trackFingerprints = trackFingerprints;
     }
-    createdSetlists.get(name).add(id);
   }
 }
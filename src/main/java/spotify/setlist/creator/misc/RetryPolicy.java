@@ -0,0 +1,199 @@
+package spotify.setlist.creator.misc;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import se.michaelthelin.spotify.exceptions.detailed.BadGatewayException;
+import se.michaelthelin.spotify.exceptions.detailed.ForbiddenException;
+import se.michaelthelin.spotify.exceptions.detailed.InternalServerErrorException;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+import se.michaelthelin.spotify.exceptions.detailed.ServiceUnavailableException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import spotify.setlist.util.StatsProvider;
+import spotify.util.SpotifyLogger;
+import spotify.util.SpotifyUtils;
+
+/**
+ * Retries flaky Spotify calls with exponential backoff and jitter. Only errors that are known to go away on their own
+ * are retried (5xx server errors, network errors, and the random "Insufficient client scope" errors Spotify likes
+ * to throw every now and then). Anything else fails right away.
+ * <p>
+ * 429 Too Many Requests is deliberately not retried here: the calls are wrapped in {@link SpotifyRateLimiter},
+ * which already owns throttling and its cooldowns. Once the rate limiter gives up on a 429, so does this policy.
+ * <p>
+ * Every operation has its own budget of attempts, configurable via setlist_bot.retry_max_attempts_[operation].
+ */
+@Component
+public class RetryPolicy implements StatsProvider {
+  private static final String INITIAL_DELAY_MS_ENV = "setlist_bot.retry_initial_delay_ms";
+  private static final String MAX_DELAY_MS_ENV = "setlist_bot.retry_max_delay_ms";
+  private static final String MAX_ATTEMPTS_ENV_PREFIX = "setlist_bot.retry_max_attempts_";
+  private static final int DEFAULT_INITIAL_DELAY_MS = 250;
+  private static final int DEFAULT_MAX_DELAY_MS = 8000;
+
+  private static final String INSUFFICIENT_SCOPE_MESSAGE = "Insufficient client scope";
+
+  public enum Operation {
+    ADD_TRACKS("addTracks", 6, false),
+    /**
+     * Due to a weird quirk with Spotify's API, attaching an image sometimes fails with Not Found
+     * despite the artist clearly having images, which goes away after a few retries
+     */
+    ATTACH_IMAGE("attachImage", 6, true),
+    DELETE_PLAYLIST("deletePlaylist", 4, false);
+
+    private final String statsName;
+    private final int defaultMaxAttempts;
+    private final boolean retryNotFound;
+
+    Operation(String statsName, int defaultMaxAttempts, boolean retryNotFound) {
+      this.statsName = statsName;
+      this.defaultMaxAttempts = defaultMaxAttempts;
+      this.retryNotFound = retryNotFound;
+    }
+  }
+
+  private final SpotifyLogger logger;
+  private final long initialDelayMillis;
+  private final long maxDelayMillis;
+  private final Map<Operation, Integer> maxAttempts;
+  private final Map<Operation, OperationStats> operationStats;
+
+  RetryPolicy(SpotifyLogger logger, Environment environment) {
+    this.logger = logger;
+    this.initialDelayMillis = environment.getProperty(INITIAL_DELAY_MS_ENV, Integer.class, DEFAULT_INITIAL_DELAY_MS);
+    this.maxDelayMillis = environment.getProperty(MAX_DELAY_MS_ENV, Integer.class, DEFAULT_MAX_DELAY_MS);
+    this.maxAttempts = new EnumMap<>(Operation.class);
+    this.operationStats = new EnumMap<>(Operation.class);
+    for (Operation operation : Operation.values()) {
+      String maxAttemptsEnv = MAX_ATTEMPTS_ENV_PREFIX + operation.name().toLowerCase();
+      maxAttempts.put(operation, Math.max(1, environment.getProperty(maxAttemptsEnv, Integer.class, operation.defaultMaxAttempts)));
+      operationStats.put(operation, new OperationStats());
+    }
+  }
+
+  /**
+   * Execute the given call, retrying it on retryable errors until it succeeds or the attempts of the operation are used up.
+   *
+   * @param operation the operation, which determines the budget and what counts as retryable
+   * @param call the call
+   * @param <T> the return type
+   * @return the result of the call
+   * @throws RuntimeException the last error, if the call didn't succeed
+   */
+  public <T> T execute(Operation operation, Supplier<T> call) {
+    OperationStats stats = operationStats.get(operation);
+    int attempts = maxAttempts.get(operation);
+    stats.calls.incrementAndGet();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        T result = call.get();
+        stats.successes.incrementAndGet();
+        return result;
+      } catch (RuntimeException e) {
+        if (!isRetryable(operation, e)) {
+          stats.failedFast.incrementAndGet();
+          throw e;
+        }
+        if (attempt >= attempts) {
+          stats.exhausted.incrementAndGet();
+          throw e;
+        }
+        long delayMillis = getBackoffMillis(attempt);
+        stats.retries.incrementAndGet();
+        stats.totalBackoffMillis.addAndGet(delayMillis);
+        logger.debug(String.format("Retrying %s in %dms (attempt %d/%d): %s", operation, delayMillis, attempt, attempts, e.getMessage()));
+        SpotifyUtils.sneakySleep(delayMillis);
+      }
+    }
+  }
+
+  /**
+   * Same as {@link RetryPolicy#execute}, for calls without return value.
+   *
+   * @param operation the operation
+   * @param call the call
+   */
+  public void run(Operation operation, Runnable call) {
+    execute(operation, () -> {
+      call.run();
+      return null;
+    });
+  }
+
+  /**
+   * Exponential backoff with "equal jitter": half of the delay is fixed, the other half is random,
+   * so concurrent retries spread out without any of them retrying immediately.
+   */
+  private long getBackoffMillis(int attempt) {
+    long delay = Math.min(maxDelayMillis, initialDelayMillis << Math.min(attempt - 1, 20));
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  private static boolean isRetryable(Operation operation, Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof TooManyRequestsException) {
+        return false;
+      }
+      if (cause instanceof InternalServerErrorException
+          || cause instanceof BadGatewayException
+          || cause instanceof ServiceUnavailableException
+          || cause instanceof IOException) {
+        return true;
+      }
+      if (cause instanceof ForbiddenException) {
+        return cause.getMessage() != null && cause.getMessage().contains(INSUFFICIENT_SCOPE_MESSAGE);
+      }
+      if (cause instanceof NotFoundException) {
+        return operation.retryNotFound;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String getStatsName() {
+    return "retryPolicy";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("initialDelayMillis", initialDelayMillis);
+    stats.put("maxDelayMillis", maxDelayMillis);
+    for (Operation operation : Operation.values()) {
+      Map<String, Object> operationStatsMap = operationStats.get(operation).getStats();
+      operationStatsMap.put("maxAttempts", maxAttempts.get(operation));
+      stats.put(operation.statsName, operationStatsMap);
+    }
+    return stats;
+  }
+
+  private static class OperationStats {
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failedFast = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong totalBackoffMillis = new AtomicLong();
+
+    Map<String, Object> getStats() {
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("calls", calls.get());
+      stats.put("successes", successes.get());
+      stats.put("retries", retries.get());
+      stats.put("failedFast", failedFast.get());
+      stats.put("exhausted", exhausted.get());
+      stats.put("totalBackoffMillis", totalBackoffMillis.get());
+      return stats;
+    }
+  }
+}
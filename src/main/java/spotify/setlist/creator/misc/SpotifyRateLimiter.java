@@ -0,0 +1,170 @@
+package spotify.setlist.creator.misc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import spotify.api.events.SpotifyApiException;
+import spotify.setlist.util.StatsProvider;
+import spotify.setlist.util.TokenBucket;
+import spotify.util.SpotifyLogger;
+import spotify.util.SpotifyUtils;
+
+/**
+ * Central rate limiter that every Spotify API call of the bot should go through. Without it, concurrent calls
+ * tend to run into 429 Too Many Requests (and weird "Insufficient client scope" errors as a side effect).
+ * <p>
+ * The rate adapts on its own: any 429 halves it and pauses all calls for the duration of the Retry-After header,
+ * every successful call ramps it up again a little, up to the configured maximum.
+ */
+@Component
+public class SpotifyRateLimiter implements StatsProvider {
+  private static final String MAX_REQUESTS_PER_SECOND_ENV = "setlist_bot.spotify_max_requests_per_second";
+  private static final double DEFAULT_MAX_REQUESTS_PER_SECOND = 10.0;
+  private static final double MIN_REQUESTS_PER_SECOND = 1.0;
+  private static final double RAMP_UP_PER_SUCCESS = 0.05;
+  private static final double BACKOFF_FACTOR = 0.5;
+  private static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
+  private static final int MAX_THROTTLED_ATTEMPTS = 3;
+
+  private final TokenBucket tokenBucket;
+  private final double maxRequestsPerSecond;
+  private final SpotifyLogger logger;
+
+  private volatile long cooldownUntil;
+
+  private final AtomicLong permits;
+  private final AtomicLong throttleEvents;
+  private final AtomicLong totalWaitMillis;
+
+  SpotifyRateLimiter(Environment environment, SpotifyLogger logger) {
+    this.logger = logger;
+    this.maxRequestsPerSecond = environment.getProperty(MAX_REQUESTS_PER_SECOND_ENV, Double.class, DEFAULT_MAX_REQUESTS_PER_SECOND);
+    this.tokenBucket = new TokenBucket(maxRequestsPerSecond, maxRequestsPerSecond);
+    this.permits = new AtomicLong();
+    this.throttleEvents = new AtomicLong();
+    this.totalWaitMillis = new AtomicLong();
+  }
+
+  /**
+   * Execute the given Spotify call once a permit is available. If the call gets throttled by Spotify,
+   * it's retried after the requested cooldown (up to a few times).
+   *
+   * @param spotifyCall the call, usually a SpotifyCall.execute(...) or a PlaylistService method
+   * @param <T> the return type
+   * @return the result of the call
+   */
+  public <T> T execute(Supplier<T> spotifyCall) {
+    for (int attempt = 1; ; attempt++) {
+      waitForPermit();
+      try {
+        T result = spotifyCall.get();
+        onSuccess();
+        return result;
+      } catch (SpotifyApiException e) {
+        TooManyRequestsException tooManyRequestsException = findTooManyRequestsCause(e);
+        if (tooManyRequestsException == null || attempt >= MAX_THROTTLED_ATTEMPTS) {
+          throw e;
+        }
+        onThrottled(tooManyRequestsException.getRetryAfter());
+      }
+    }
+  }
+
+  /**
+   * Same as {@link SpotifyRateLimiter#execute}, for calls without return value.
+   *
+   * @param spotifyCall the call
+   */
+  public void run(Runnable spotifyCall) {
+    execute(() -> {
+      spotifyCall.run();
+      return null;
+    });
+  }
+
+  /**
+   * Fetch a paged Spotify endpoint page by page, each page taking its own permit (unlike wrapping
+   * SpotifyCall.executePaging, which would fetch all pages on a single permit). Stops once there are no more pages
+   * or enough items have been fetched.
+   *
+   * @param pageCall the call for the page at the given offset, e.g. offset -> SpotifyCall.execute(request.offset(offset))
+   * @param maxItems the maximum number of items
+   * @param <T> the item type
+   * @return the items
+   */
+  public <T> List<T> executePaging(IntFunction<Paging<T>> pageCall, int maxItems) {
+    List<T> items = new ArrayList<>();
+    Paging<T> page;
+    do {
+      int offset = items.size();
+      page = execute(() -> pageCall.apply(offset));
+      items.addAll(Arrays.asList(page.getItems()));
+    } while (page.getNext() != null && page.getItems().length > 0 && items.size() < maxItems);
+    return items.size() > maxItems ? new ArrayList<>(items.subList(0, maxItems)) : items;
+  }
+
+  private void waitForPermit() {
+    long cooldownMillis = cooldownUntil - System.currentTimeMillis();
+    if (cooldownMillis > 0) {
+      SpotifyUtils.sneakySleep(cooldownMillis);
+      totalWaitMillis.addAndGet(cooldownMillis);
+    }
+    totalWaitMillis.addAndGet(tokenBucket.acquire());
+    permits.incrementAndGet();
+  }
+
+  private void onSuccess() {
+    double currentRate = tokenBucket.getRatePerSecond();
+    if (currentRate < maxRequestsPerSecond) {
+      tokenBucket.setRatePerSecond(Math.min(maxRequestsPerSecond, currentRate + RAMP_UP_PER_SUCCESS));
+    }
+  }
+
+  private void onThrottled(int retryAfterSeconds) {
+    throttleEvents.incrementAndGet();
+    long retryAfterMillis = TimeUnit.SECONDS.toMillis(retryAfterSeconds > 0 ? retryAfterSeconds : DEFAULT_RETRY_AFTER_SECONDS);
+    cooldownUntil = Math.max(cooldownUntil, System.currentTimeMillis() + retryAfterMillis);
+    double reducedRate = Math.max(MIN_REQUESTS_PER_SECOND, tokenBucket.getRatePerSecond() * BACKOFF_FACTOR);
+    tokenBucket.setRatePerSecond(reducedRate);
+    logger.warning(String.format("Throttled by Spotify, pausing for %dms and reducing rate to %.1f requests/s", retryAfterMillis, reducedRate));
+  }
+
+  private static TooManyRequestsException findTooManyRequestsCause(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof TooManyRequestsException) {
+        return (TooManyRequestsException) cause;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String getStatsName() {
+    return "spotifyRateLimiter";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("requestsPerSecond", tokenBucket.getRatePerSecond());
+    stats.put("maxRequestsPerSecond", maxRequestsPerSecond);
+    stats.put("availablePermits", Math.max(0, tokenBucket.getAvailableTokens()));
+    stats.put("permits", permits.get());
+    stats.put("throttleEvents", throttleEvents.get());
+    stats.put("totalWaitMillis", totalWaitMillis.get());
+    stats.put("cooldownRemainingMillis", Math.max(0, cooldownUntil - System.currentTimeMillis()));
+    return stats;
+  }
+}
@@ -0,0 +1,278 @@
+package spotify.setlist.creator.misc;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import spotify.setlist.data.Setlist;
+import spotify.setlist.data.TrackSearchResult;
+import spotify.setlist.util.ExpiringLruCache;
+import spotify.setlist.util.StatsProvider;
+import spotify.util.SpotifyLogger;
+
+/**
+ * Caches the resolved Spotify track of previously searched songs, so that repeated conversions
+ * of the same tour don't have to search for the same songs on Spotify over and over again.
+ * The cache is periodically written to disk and restored on startup.
+ * <p>
+ * Songs that couldn't be found are remembered as well, but only for a much shorter time
+ * (Spotify's catalog changes, and an unreleased song might get released after all).
+ * These aren't written to disk.
+ */
+@Component
+public class TrackSearchCache implements StatsProvider {
+  private static final String SNAPSHOT_FILE_NAME = "track-search-cache.json";
+  private static final String MAX_SIZE_ENV = "setlist_bot.track_cache_max_size";
+  private static final String TTL_DAYS_ENV = "setlist_bot.track_cache_ttl_days";
+  private static final int DEFAULT_MAX_SIZE = 50000;
+  private static final int DEFAULT_TTL_DAYS = 30;
+  private static final String NEGATIVE_MAX_SIZE_ENV = "setlist_bot.track_cache_negative_max_size";
+  private static final String NEGATIVE_TTL_HOURS_ENV = "setlist_bot.track_cache_negative_ttl_hours";
+  private static final int DEFAULT_NEGATIVE_MAX_SIZE = 20000;
+  private static final int DEFAULT_NEGATIVE_TTL_HOURS = 24;
+
+  private final ExpiringLruCache<Key, CachedResult> cache;
+  private final ExpiringLruCache<Key, Long> notFoundCache;
+  private final ExpiringLruCache<Key, Long> expiredNotFound;
+  private final long negativeTtlMillis;
+  private final SpotifyLogger logger;
+  private final Gson gson;
+
+  private final AtomicLong negativeHits;
+  private final AtomicLong negativeExpirations;
+  private final AtomicLong negativeExpirationsFound;
+
+  private volatile boolean dirty;
+
+  TrackSearchCache(Environment environment, SpotifyLogger logger) {
+    this.logger = logger;
+    this.gson = new Gson();
+
+    int maxSize = environment.getProperty(MAX_SIZE_ENV, Integer.class, DEFAULT_MAX_SIZE);
+    int ttlDays = environment.getProperty(TTL_DAYS_ENV, Integer.class, DEFAULT_TTL_DAYS);
+    this.cache = new ExpiringLruCache<>(maxSize, Duration.ofDays(ttlDays));
+
+    // Misses are kept around for the regular TTL, so that a lookup can tell a miss whose negative TTL has run out
+    // apart from a song that has never been searched. Only the negative TTL counts for lookups. Misses that ran out
+    // are moved to expiredNotFound until they've been searched again, to see how often such a song is found after all.
+    int negativeMaxSize = environment.getProperty(NEGATIVE_MAX_SIZE_ENV, Integer.class, DEFAULT_NEGATIVE_MAX_SIZE);
+    int negativeTtlHours = environment.getProperty(NEGATIVE_TTL_HOURS_ENV, Integer.class, DEFAULT_NEGATIVE_TTL_HOURS);
+    this.notFoundCache = new ExpiringLruCache<>(negativeMaxSize, Duration.ofDays(ttlDays));
+    this.expiredNotFound = new ExpiringLruCache<>(negativeMaxSize, Duration.ofHours(negativeTtlHours));
+    this.negativeTtlMillis = Duration.ofHours(negativeTtlHours).toMillis();
+
+    this.negativeHits = new AtomicLong();
+    this.negativeExpirations = new AtomicLong();
+    this.negativeExpirationsFound = new AtomicLong();
+
+    loadSnapshot();
+  }
+
+  /**
+   * Look up the previously resolved track for the given song. Recent misses are checked first, so the hits and misses
+   * of the regular cache only count the lookups that weren't already answered by a recent miss.
+   *
+   * @param song the setlist song
+   * @param includeCoverOriginals whether cover originals were allowed during the search
+   * @return the cached result for this very song (which may be a recent {@link TrackSearchResult#notFound}), or empty if there is none
+   */
+  public Optional<TrackSearchResult> get(Setlist.Song song, boolean includeCoverOriginals) {
+    Key key = Key.of(song, includeCoverOriginals);
+    Long notFoundAt = notFoundCache.get(key);
+    if (notFoundAt != null) {
+      if (System.currentTimeMillis() - notFoundAt <= negativeTtlMillis) {
+        negativeHits.incrementAndGet();
+        return Optional.of(TrackSearchResult.notFound(song));
+      }
+      // Only the lookup that actually removes the expired miss counts it, concurrent ones just search again
+      if (notFoundCache.remove(key) != null) {
+        negativeExpirations.incrementAndGet();
+        expiredNotFound.put(key, notFoundAt);
+      }
+    }
+    CachedResult cachedResult = cache.get(key);
+    if (cachedResult != null) {
+      return Optional.of(TrackSearchResult.of(song, cachedResult.getTrack(), cachedResult.getResultType()));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Store the result of a track search. Results without a track are only cached for the shorter negative TTL.
+   *
+   * @param song the setlist song
+   * @param includeCoverOriginals whether cover originals were allowed during the search
+   * @param trackSearchResult the search result
+   */
+  public void put(Setlist.Song song, boolean includeCoverOriginals, TrackSearchResult trackSearchResult) {
+    Key key = Key.of(song, includeCoverOriginals);
+    if (trackSearchResult.hasResult()) {
+      cache.put(key, new CachedResult(trackSearchResult.getSearchResult(), trackSearchResult.getResultType()));
+      dirty = true;
+      notFoundCache.invalidate(key);
+      if (expiredNotFound.remove(key) != null) {
+        negativeExpirationsFound.incrementAndGet();
+      }
+    } else if (trackSearchResult.getResultType() == TrackSearchResult.ResultType.NOT_FOUND) {
+      notFoundCache.put(key, System.currentTimeMillis());
+    }
+  }
+
+  @Override
+  public String getStatsName() {
+    return "trackSearchCache";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>(cache.getStats());
+    long answered = (long) stats.get("hits") + negativeHits.get();
+    long lookups = answered + (long) stats.get("misses");
+    stats.put("combinedHitRate", lookups > 0 ? (double) answered / lookups : 0.0);
+    stats.put("negativeSize", notFoundCache.size());
+    stats.put("negativeTtlSeconds", negativeTtlMillis / 1000);
+    stats.put("negativeHits", negativeHits.get());
+    stats.put("negativeExpirations", negativeExpirations.get());
+    stats.put("negativeExpirationsFound", negativeExpirationsFound.get());
+    return stats;
+  }
+
+  @PreDestroy
+  @Scheduled(initialDelay = 10, fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+  public synchronized void saveSnapshot() {
+    if (!dirty) {
+      return;
+    }
+    dirty = false;
+    List<SnapshotEntry> snapshotEntries = new ArrayList<>();
+    for (Map.Entry<Key, ExpiringLruCache.Entry<CachedResult>> entry : cache.snapshot().entrySet()) {
+      CachedResult cachedResult = entry.getValue().getValue();
+      snapshotEntries.add(new SnapshotEntry(entry.getKey(), cachedResult.getTrack(), cachedResult.getResultType(), entry.getValue().getCreatedAt()));
+    }
+    try {
+      Path target = Paths.get(SNAPSHOT_FILE_NAME);
+      Path temp = Paths.get(SNAPSHOT_FILE_NAME + ".tmp");
+      Files.writeString(temp, gson.toJson(snapshotEntries));
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.error("Failed to write track search cache snapshot: " + e.getMessage());
+      dirty = true;
+    }
+  }
+
+  private void loadSnapshot() {
+    Path path = Paths.get(SNAPSHOT_FILE_NAME);
+    if (!Files.exists(path)) {
+      return;
+    }
+    try {
+      Type snapshotType = new TypeToken<List<SnapshotEntry>>(){}.getType();
+      List<SnapshotEntry> snapshotEntries = gson.fromJson(Files.readString(path), snapshotType);
+      if (snapshotEntries != null) {
+        for (SnapshotEntry snapshotEntry : snapshotEntries) {
+          cache.put(snapshotEntry.key, new CachedResult(snapshotEntry.track, snapshotEntry.resultType), snapshotEntry.createdAt);
+        }
+      }
+      logger.info("Restored " + cache.size() + " cached track search results");
+    } catch (Exception e) {
+      logger.error("Failed to read track search cache snapshot, starting empty: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Everything that has an influence on the outcome of a track search.
+   */
+  static class Key {
+    private final String queryArtistName;
+    private final String songName;
+    private final String originalArtistName;
+    private final boolean includeCoverOriginals;
+
+    Key(String queryArtistName, String songName, String originalArtistName, boolean includeCoverOriginals) {
+      this.queryArtistName = queryArtistName;
+      this.songName = songName;
+      this.originalArtistName = originalArtistName;
+      this.includeCoverOriginals = includeCoverOriginals;
+    }
+
+    static Key of(Setlist.Song song, boolean includeCoverOriginals) {
+      String queryArtistName = song.isTape() ? song.getOriginalArtistName() : song.getArtistName();
+      String originalArtistName = song.isCover() ? song.getOriginalArtistName() : null;
+      return new Key(queryArtistName, song.getSongName(), originalArtistName, song.isCover() && includeCoverOriginals);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return includeCoverOriginals == key.includeCoverOriginals
+        && Objects.equals(queryArtistName, key.queryArtistName)
+        && Objects.equals(songName, key.songName)
+        && Objects.equals(originalArtistName, key.originalArtistName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(queryArtistName, songName, originalArtistName, includeCoverOriginals);
+    }
+  }
+
+  private static class CachedResult {
+    private final Track track;
+    private final TrackSearchResult.ResultType resultType;
+
+    CachedResult(Track track, TrackSearchResult.ResultType resultType) {
+      this.track = track;
+      this.resultType = resultType;
+    }
+
+    Track getTrack() {
+      return track;
+    }
+
+    TrackSearchResult.ResultType getResultType() {
+      return resultType;
+    }
+  }
+
+  private static class SnapshotEntry {
+    private final Key key;
+    private final Track track;
+    private final TrackSearchResult.ResultType resultType;
+    private final long createdAt;
+
+    SnapshotEntry(Key key, Track track, TrackSearchResult.ResultType resultType, long createdAt) {
+      this.key = key;
+      this.track = track;
+      this.resultType = resultType;
+      this.createdAt = createdAt;
+    }
+  }
+}
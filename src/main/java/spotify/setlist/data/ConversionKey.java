@@ -0,0 +1,42 @@
+package spotify.setlist.data;
+
+import java.util.Objects;
+
+/**
+ * Identifies a conversion request: the same setlist converted with the same options
+ * will always result in the same playlist.
+ */
+public class ConversionKey {
+  private final String setlistFmId;
+  private final SetlistCreationOptions options;
+
+  public ConversionKey(String setlistFmId, SetlistCreationOptions options) {
+    this.setlistFmId = setlistFmId;
+    this.options = options;
+  }
+
+  public String getSetlistFmId() {
+    return setlistFmId;
+  }
+
+  public SetlistCreationOptions getOptions() {
+    return options;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ConversionKey that = (ConversionKey) o;
+    return Objects.equals(setlistFmId, that.setlistFmId) && Objects.equals(options, that.options);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(setlistFmId, options);
+  }
+}
@@ -10,6 +10,7 @@ import spotify.setlist.util.SetlistUtils;
 @SuppressWarnings("unused")
 public class Setlist {
   private final String artistName;
+  private final String artistMbid;
   private final Date eventDate;
   private final String city;
   private final String venue;
@@ -17,7 +18,12 @@ public class Setlist {
   private final List<Song> songs;
 
   public Setlist(String artistName, Date eventDate, String city, String venue, String tourName, List<Song> songs) {
+    this(artistName, null, eventDate, city, venue, tourName, songs);
+  }
+
+  public Setlist(String artistName, String artistMbid, Date eventDate, String city, String venue, String tourName, List<Song> songs) {
     this.artistName = artistName;
+    this.artistMbid = artistMbid;
     this.eventDate = eventDate;
     this.city = city;
     this.venue = venue;
@@ -29,6 +35,13 @@ public class Setlist {
     return artistName;
   }
 
+  /**
+   * @return the MusicBrainz ID of the artist, if setlist.fm knows it (otherwise null)
+   */
+  public String getArtistMbid() {
+    return artistMbid;
+  }
+
   public Date getEventDate() {
     return eventDate;
   }
@@ -69,16 +82,24 @@ public class Setlist {
     private final String songName;
     private final String artistName;
     private final String originalArtistName;
+    private final String artistMbid;
+    private final String originalArtistMbid;
     private final String info;
     private final boolean tape;
     private final boolean cover;
     private final boolean medleyPart;
 
     public Song(int index, String songName, String artistName, String originalArtistName, String info, boolean tape, boolean cover, boolean medleyPart) {
+      this(index, songName, artistName, originalArtistName, null, null, info, tape, cover, medleyPart);
+    }
+
+    public Song(int index, String songName, String artistName, String originalArtistName, String artistMbid, String originalArtistMbid, String info, boolean tape, boolean cover, boolean medleyPart) {
       this.index = index;
       this.songName = songName;
       this.artistName = artistName;
       this.originalArtistName = originalArtistName;
+      this.artistMbid = artistMbid;
+      this.originalArtistMbid = originalArtistMbid;
       this.info = info;
       this.tape = tape;
       this.cover = cover;
@@ -86,7 +107,7 @@ public class Setlist {
     }
 
     public Song(Song song) {
-      this(song.getIndex(), song.getSongName(), song.getArtistName(), song.getOriginalArtistName(), song.getInfo(), song.isTape(), song.isCover(), song.isMedleyPart());
+      this(song.getIndex(), song.getSongName(), song.getArtistName(), song.getOriginalArtistName(), song.getArtistMbid(), song.getOriginalArtistMbid(), song.getInfo(), song.isTape(), song.isCover(), song.isMedleyPart());
     }
 
     public int getIndex() {
@@ -105,6 +126,20 @@ public class Setlist {
       return originalArtistName;
     }
 
+    /**
+     * @return the MusicBrainz ID of the performing artist (may be null)
+     */
+    public String getArtistMbid() {
+      return artistMbid;
+    }
+
+    /**
+     * @return the MusicBrainz ID of the original artist, for covers (may be null)
+     */
+    public String getOriginalArtistMbid() {
+      return originalArtistMbid;
+    }
+
     public String getInfo() {
       if (info == null) {
         return "";
@@ -1,5 +1,7 @@
 package spotify.setlist.data;
 
+import java.util.Objects;
+
 public class SetlistCreationOptions {
   private final boolean includeTapesMain;
   private final boolean includeTapesForeign;
@@ -34,4 +36,25 @@ public class SetlistCreationOptions {
   public boolean isAttachImage() {
     return attachImage;
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SetlistCreationOptions that = (SetlistCreationOptions) o;
+    return includeTapesMain == that.includeTapesMain
+      && includeTapesForeign == that.includeTapesForeign
+      && includeCoverOriginals == that.includeCoverOriginals
+      && includeMedleys == that.includeMedleys
+      && attachImage == that.attachImage;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(includeTapesMain, includeTapesForeign, includeCoverOriginals, includeMedleys, attachImage);
+  }
 }
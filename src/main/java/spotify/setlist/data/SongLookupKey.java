@@ -0,0 +1,60 @@
+package spotify.setlist.data;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Identifies the Spotify lookup of a setlist song: two songs with the same key will always be
+ * resolved to the same track, no matter where in the setlist they appear. Case is ignored,
+ * as neither the Spotify search nor the matching of the results is case-sensitive.
+ */
+public class SongLookupKey {
+  private final String queryArtistName;
+  private final String songName;
+  private final String originalArtistName;
+  private final boolean coverOriginalLookup;
+
+  private SongLookupKey(String queryArtistName, String songName, String originalArtistName, boolean coverOriginalLookup) {
+    this.queryArtistName = queryArtistName;
+    this.songName = songName;
+    this.originalArtistName = originalArtistName;
+    this.coverOriginalLookup = coverOriginalLookup;
+  }
+
+  /**
+   * Create the lookup key for the given song.
+   *
+   * @param song the setlist song
+   * @param includeCoverOriginals whether cover originals are allowed during the search
+   * @return the key
+   */
+  public static SongLookupKey of(Setlist.Song song, boolean includeCoverOriginals) {
+    String queryArtistName = song.isTape() ? song.getOriginalArtistName() : song.getArtistName();
+    String originalArtistName = song.isCover() ? song.getOriginalArtistName() : null;
+    return new SongLookupKey(lowerCase(queryArtistName), lowerCase(song.getSongName()), lowerCase(originalArtistName), song.isCover() && includeCoverOriginals);
+  }
+
+  private static String lowerCase(String s) {
+    return s != null ? s.toLowerCase(Locale.ROOT) : null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SongLookupKey that = (SongLookupKey) o;
+    return coverOriginalLookup == that.coverOriginalLookup
+      && Objects.equals(queryArtistName, that.queryArtistName)
+      && Objects.equals(songName, that.songName)
+      && Objects.equals(originalArtistName, that.originalArtistName);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(queryArtistName, songName, originalArtistName, coverOriginalLookup);
+  }
+}
@@ -1,82 +1,166 @@
 package spotify.setlist.setlistfm;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.jsoup.Jsoup;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-
 import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
 import spotify.setlist.data.Setlist;
+import spotify.setlist.util.ExpiringLruCache;
+import spotify.setlist.util.StatsProvider;
 
-public class SetlistFmApi {
-  private static final SimpleDateFormat PARSE_LFM_DATE_FORMATTER = new SimpleDateFormat("dd-MM-yyyy", Locale.US);
+@Component
+public class SetlistFmApi implements StatsProvider {
+  private static final String CACHE_TTL_SECONDS_ENV = "setlist_bot.setlist_cache_ttl_seconds";
+  private static final String CACHE_MAX_SIZE_ENV = "setlist_bot.setlist_cache_max_size";
+  private static final int DEFAULT_CACHE_TTL_SECONDS = 300;
+  private static final int DEFAULT_CACHE_MAX_SIZE = 2000;
 
-  public static Setlist getSetlist(String setlistFmId, String setlistFmApiToken) throws NotFoundException {
-    try {
-      String url = UriComponentsBuilder.newInstance()
-        .scheme("https")
-        .host("api.setlist.fm")
-        .path("/rest/1.0/setlist/" + setlistFmId).build().toUriString();
-      String rawJson = Jsoup.connect(url)
-        .header("Accept", "application/json")
-        .header("x-api-key", setlistFmApiToken).ignoreContentType(true).execute().body();
-      JsonObject json = JsonParser.parseString(rawJson).getAsJsonObject();
-
-      String artistName = json.get("artist").getAsJsonObject().get("name").getAsString();
-      Date eventDate = PARSE_LFM_DATE_FORMATTER.parse(json.get("eventDate").getAsString());
-      JsonObject venueJson = json.get("venue").getAsJsonObject();
-      JsonElement cityJson = venueJson.get("city");
-      String country = cityJson.getAsJsonObject().get("country").getAsJsonObject().get("name").getAsString();
-      String city = cityJson.getAsJsonObject().get("name").getAsString() + ", " + country;
-      String venue = venueJson.get("name").getAsString();
-      String tourName = json.has("tour") ? json.get("tour").getAsJsonObject().get("name").getAsString() : "";
-
-      List<Setlist.Song> setlistSongs = new ArrayList<>();
-      JsonArray asJsonArray = json.get("sets").getAsJsonObject().get("set").getAsJsonArray();
-      if (asJsonArray.isEmpty()) {
-        throw new IllegalStateException("Setlist mustn't be empty: " + url);
+  /**
+   * How long stale setlists are kept around for conditional revalidation, after their TTL has run out
+   */
+  private static final Duration STALE_RETENTION = Duration.ofDays(1);
+
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_NOT_MODIFIED = 304;
+
+  private final SetlistFmRequestGovernor requestGovernor;
+
+  private final ExpiringLruCache<String, CachedSetlist> setlistCache;
+  private final long cacheTtlMillis;
+
+  private final AtomicLong freshHits = new AtomicLong();
+  private final AtomicLong revalidatedHits = new AtomicLong();
+  private final AtomicLong downloads = new AtomicLong();
+
+  SetlistFmApi(SetlistFmRequestGovernor requestGovernor, Environment environment) {
+    this.requestGovernor = requestGovernor;
+    int cacheTtlSeconds = environment.getProperty(CACHE_TTL_SECONDS_ENV, Integer.class, DEFAULT_CACHE_TTL_SECONDS);
+    int cacheMaxSize = environment.getProperty(CACHE_MAX_SIZE_ENV, Integer.class, DEFAULT_CACHE_MAX_SIZE);
+    this.cacheTtlMillis = Duration.ofSeconds(cacheTtlSeconds).toMillis();
+    this.setlistCache = new ExpiringLruCache<>(cacheMaxSize, Duration.ofSeconds(cacheTtlSeconds).plus(STALE_RETENTION));
+  }
+
+  /**
+   * @return the number of configured setlist.fm API keys
+   */
+  public int getApiKeyCount() {
+    return requestGovernor.getApiKeyCount();
+  }
+
+  /**
+   * Get the setlist for the given setlist.fm ID. Setlists are cached for a short amount of time. Once that
+   * time has passed, the setlist is revalidated with setlist.fm and only downloaded again if it has changed.
+   *
+   * @param setlistFmId the setlist.fm ID
+   * @return the setlist
+   * @throws NotFoundException if the setlist couldn't be found or is invalid
+   * @throws SetlistFmBusyException if setlist.fm is throttling all API keys right now
+   */
+  public Setlist getSetlist(String setlistFmId) throws NotFoundException {
+    CachedSetlist cachedSetlist = setlistCache.get(setlistFmId);
+    if (cachedSetlist != null && System.currentTimeMillis() - cachedSetlist.getValidatedAt() <= cacheTtlMillis) {
+      freshHits.incrementAndGet();
+      return cachedSetlist.getSetlist();
+    }
+
+    String url = UriComponentsBuilder.newInstance()
+      .scheme("https")
+      .host("api.setlist.fm")
+      .path("/rest/1.0/setlist/" + setlistFmId).build().toUriString();
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("Accept", "application/json");
+    if (cachedSetlist != null) {
+      if (cachedSetlist.getETag() != null) {
+        headers.put("If-None-Match", cachedSetlist.getETag());
+      }
+      if (cachedSetlist.getLastModified() != null) {
+        headers.put("If-Modified-Since", cachedSetlist.getLastModified());
       }
+    }
 
-      int index = 0;
-      for (JsonElement sets : asJsonArray) {
-        JsonArray songs = sets.getAsJsonObject().get("song").getAsJsonArray();
-        for (JsonElement song : songs) {
-          index++;
-          JsonObject songInfo = song.getAsJsonObject();
-          String songName = songInfo.get("name").getAsString();
-          if (songName.isBlank()) {
-            songName = "[Generic Track]";
-          }
-          boolean isTape = songInfo.has("tape") && songInfo.get("tape").getAsBoolean();
-          boolean isCover = songInfo.has("cover");
-
-          String[] medleyParts = songName.split(" / ");
-          boolean isMedleyPart = medleyParts.length > 1;
-          for (String medleyPartOrSingleSong : medleyParts) {
-            String originalArtist = isCover
-              ? songInfo.get("cover").getAsJsonObject().get("name").getAsString()
-              : artistName;
-
-            String info = songInfo.has("info") ? songInfo.get("info").getAsString() : null;
-
-            Setlist.Song setlistSong = new Setlist.Song(index, medleyPartOrSingleSong, artistName, originalArtist, info, isTape, isCover, isMedleyPart);
-            setlistSongs.add(setlistSong);
-          }
+    try {
+      HttpResponse<InputStream> response = requestGovernor.get(URI.create(url), headers);
+      try (Reader body = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+        if (cachedSetlist != null && response.statusCode() == HTTP_NOT_MODIFIED) {
+          revalidatedHits.incrementAndGet();
+          CachedSetlist revalidatedSetlist = new CachedSetlist(cachedSetlist.getSetlist(), cachedSetlist.getETag(), cachedSetlist.getLastModified());
+          setlistCache.put(setlistFmId, revalidatedSetlist);
+          return revalidatedSetlist.getSetlist();
+        }
+        if (response.statusCode() != HTTP_OK) {
+          throw new IllegalStateException("setlist.fm responded with HTTP " + response.statusCode() + ": " + url);
         }
-      }
 
-      return new Setlist(artistName, eventDate, city, venue, tourName, setlistSongs);
+        downloads.incrementAndGet();
+        Setlist setlist = SetlistFmParser.parse(body, url);
+        HttpHeaders responseHeaders = response.headers();
+        setlistCache.put(setlistFmId, new CachedSetlist(setlist, responseHeaders.firstValue("ETag").orElse(null), responseHeaders.firstValue("Last-Modified").orElse(null)));
+        return setlist;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NotFoundException("Setlist isn't valid: " + setlistFmId);
+    } catch (SetlistFmBusyException e) {
+      throw new SetlistFmBusyException("setlist.fm is busy, couldn't fetch setlist " + setlistFmId, e);
     } catch (Exception e) {
       throw new NotFoundException("Setlist isn't valid: " + setlistFmId);
     }
   }
+
+  @Override
+  public String getStatsName() {
+    return "setlistFmCache";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>(setlistCache.getStats());
+    stats.put("freshHits", freshHits.get());
+    stats.put("revalidatedHits", revalidatedHits.get());
+    stats.put("downloads", downloads.get());
+    return stats;
+  }
+
+  private static class CachedSetlist {
+    private final Setlist setlist;
+    private final String eTag;
+    private final String lastModified;
+    private final long validatedAt;
+
+    CachedSetlist(Setlist setlist, String eTag, String lastModified) {
+      this.setlist = setlist;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.validatedAt = System.currentTimeMillis();
+    }
+
+    Setlist getSetlist() {
+      return setlist;
+    }
+
+    String getETag() {
+      return eTag;
+    }
+
+    String getLastModified() {
+      return lastModified;
+    }
+
+    long getValidatedAt() {
+      return validatedAt;
+    }
+  }
 }
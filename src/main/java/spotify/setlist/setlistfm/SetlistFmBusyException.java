@@ -0,0 +1,15 @@
+package spotify.setlist.setlistfm;
+
+/**
+ * Thrown when setlist.fm can't be asked right now, because it's throttling every configured API key.
+ * Unlike a missing or invalid setlist, this goes away on its own after a while.
+ */
+public class SetlistFmBusyException extends RuntimeException {
+  public SetlistFmBusyException(String message) {
+    super(message);
+  }
+
+  public SetlistFmBusyException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,307 @@
+package spotify.setlist.setlistfm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLSession;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import spotify.setlist.util.StatsProvider;
+
+/**
+ * The one HTTP client all setlist.fm requests go through. Connections are kept alive and reused across requests
+ * (multiplexed over a single connection if setlist.fm speaks HTTP/2), so only the first request pays for the TLS
+ * handshake. Every request has a connect timeout and a timeout for the whole exchange (including reading the body),
+ * so a slow setlist.fm can't block a conversion for longer than that.
+ * <p>
+ * Response bodies are streamed, so they can be parsed while they're still arriving. Up until the response headers,
+ * the timeout is enforced by the HTTP client itself. For the body, a watchdog closes the stream once the timeout
+ * has run out, which aborts the exchange and makes the pending read fail. (Cancelling the future of an exchange
+ * doesn't abort it before Java 16, closing the body stream does.)
+ */
+@Component
+public class SetlistFmHttpClient implements StatsProvider {
+  private static final String CONNECT_TIMEOUT_MS_ENV = "setlist_bot.setlistfm_connect_timeout_ms";
+  private static final String REQUEST_TIMEOUT_MS_ENV = "setlist_bot.setlistfm_request_timeout_ms";
+  private static final int DEFAULT_CONNECT_TIMEOUT_MS = 3000;
+  private static final int DEFAULT_REQUEST_TIMEOUT_MS = 10000;
+
+  private final HttpClient httpClient;
+  private final ThreadPoolExecutor executor;
+  private final ScheduledThreadPoolExecutor watchdog;
+  private final Duration connectTimeout;
+  private final Duration requestTimeout;
+
+  private final AtomicLong requests;
+  private final AtomicLong failures;
+  private final AtomicLong timeouts;
+  private final AtomicLong bodyTimeouts;
+  private final AtomicLong http2Responses;
+  private final AtomicLong http1Responses;
+  private final AtomicInteger inFlight;
+  private final AtomicInteger maxInFlight;
+  private final AtomicLong totalLatencyMillis;
+  private final AtomicLong maxLatencyMillis;
+
+  SetlistFmHttpClient(Environment environment) {
+    this.connectTimeout = Duration.ofMillis(environment.getProperty(CONNECT_TIMEOUT_MS_ENV, Integer.class, DEFAULT_CONNECT_TIMEOUT_MS));
+    this.requestTimeout = Duration.ofMillis(environment.getProperty(REQUEST_TIMEOUT_MS_ENV, Integer.class, DEFAULT_REQUEST_TIMEOUT_MS));
+
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "setlistfm-http-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "setlistfm-http-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.watchdog.setRemoveOnCancelPolicy(true);
+    this.httpClient = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .connectTimeout(connectTimeout)
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .executor(executor)
+      .build();
+
+    this.requests = new AtomicLong();
+    this.failures = new AtomicLong();
+    this.timeouts = new AtomicLong();
+    this.bodyTimeouts = new AtomicLong();
+    this.http2Responses = new AtomicLong();
+    this.http1Responses = new AtomicLong();
+    this.inFlight = new AtomicInteger();
+    this.maxInFlight = new AtomicInteger();
+    this.totalLatencyMillis = new AtomicLong();
+    this.maxLatencyMillis = new AtomicLong();
+  }
+
+  @PreDestroy
+  void shutdown() {
+    watchdog.shutdownNow();
+    executor.shutdownNow();
+  }
+
+  /**
+   * Send a GET request. Returns as soon as the response headers have arrived, the body is streamed.
+   * The body must be closed by the caller, even if it isn't read. If the full body hasn't been read
+   * within the request timeout, reading it fails with an {@link HttpTimeoutException}.
+   *
+   * @param uri the URI
+   * @param headers the request headers
+   * @return the response
+   * @throws IOException if the request failed or timed out
+   * @throws InterruptedException if the calling thread was interrupted while waiting
+   */
+  public HttpResponse<InputStream> get(URI uri, Map<String, String> headers) throws IOException, InterruptedException {
+    HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+      .timeout(requestTimeout)
+      .GET();
+    headers.forEach(request::header);
+
+    requests.incrementAndGet();
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    long start = System.currentTimeMillis();
+    HttpResponse<InputStream> response;
+    try {
+      response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      failures.incrementAndGet();
+      if (e instanceof HttpTimeoutException) {
+        timeouts.incrementAndGet();
+      }
+      finish(start);
+      throw e;
+    }
+    if (response.version() == HttpClient.Version.HTTP_2) {
+      http2Responses.incrementAndGet();
+    } else {
+      http1Responses.incrementAndGet();
+    }
+    long remainingMillis = Math.max(0, start + requestTimeout.toMillis() - System.currentTimeMillis());
+    return new StreamedResponse(response, new WatchedBody(response.body(), uri, start, remainingMillis));
+  }
+
+  private void finish(long start) {
+    inFlight.decrementAndGet();
+    long latency = System.currentTimeMillis() - start;
+    totalLatencyMillis.addAndGet(latency);
+    maxLatencyMillis.accumulateAndGet(latency, Math::max);
+  }
+
+  @Override
+  public String getStatsName() {
+    return "setlistFmHttpClient";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    long completed = requests.get() - inFlight.get();
+    stats.put("connectTimeoutMillis", connectTimeout.toMillis());
+    stats.put("requestTimeoutMillis", requestTimeout.toMillis());
+    stats.put("requests", requests.get());
+    stats.put("failures", failures.get());
+    stats.put("timeouts", timeouts.get());
+    stats.put("bodyTimeouts", bodyTimeouts.get());
+    stats.put("http2Responses", http2Responses.get());
+    stats.put("http1Responses", http1Responses.get());
+    stats.put("inFlight", inFlight.get());
+    stats.put("maxInFlight", maxInFlight.get());
+    stats.put("avgLatencyMillis", completed > 0 ? totalLatencyMillis.get() / completed : 0);
+    stats.put("maxLatencyMillis", maxLatencyMillis.get());
+    stats.put("poolThreads", executor.getPoolSize());
+    stats.put("poolActiveThreads", executor.getActiveCount());
+    stats.put("poolLargestThreads", executor.getLargestPoolSize());
+    stats.put("poolCompletedTasks", executor.getCompletedTaskCount());
+    stats.put("watchdogsPending", watchdog.getQueue().size());
+    return stats;
+  }
+
+  /**
+   * A response body that's closed by the watchdog if it hasn't been closed by the reader in time.
+   * The exchange counts as in flight until its body has been closed.
+   */
+  private class WatchedBody extends FilterInputStream {
+    private final URI uri;
+    private final long start;
+    private final AtomicBoolean closed;
+    private final ScheduledFuture<?> deadline;
+    private volatile boolean timedOut;
+
+    WatchedBody(InputStream body, URI uri, long start, long remainingMillis) {
+      super(body);
+      this.uri = uri;
+      this.start = start;
+      this.closed = new AtomicBoolean();
+      this.deadline = watchdog.schedule(this::abort, remainingMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void abort() {
+      timedOut = true;
+      try {
+        close();
+      } catch (IOException e) {
+        // The exchange is being discarded anyway
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        return super.read();
+      } catch (IOException e) {
+        throw translate(e);
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      try {
+        return super.read(b, off, len);
+      } catch (IOException e) {
+        throw translate(e);
+      }
+    }
+
+    private IOException translate(IOException e) {
+      if (timedOut) {
+        HttpTimeoutException timeoutException = new HttpTimeoutException("setlist.fm didn't send the full response within " + requestTimeout.toMillis() + "ms: " + uri);
+        timeoutException.initCause(e);
+        return timeoutException;
+      }
+      return e;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed.compareAndSet(false, true)) {
+        deadline.cancel(false);
+        if (timedOut) {
+          failures.incrementAndGet();
+          timeouts.incrementAndGet();
+          bodyTimeouts.incrementAndGet();
+        }
+        finish(start);
+        super.close();
+      }
+    }
+  }
+
+  /**
+   * The original response, with the body swapped for the watched one
+   */
+  private static class StreamedResponse implements HttpResponse<InputStream> {
+    private final HttpResponse<InputStream> response;
+    private final InputStream body;
+
+    StreamedResponse(HttpResponse<InputStream> response, InputStream body) {
+      this.response = response;
+      this.body = body;
+    }
+
+    @Override
+    public int statusCode() {
+      return response.statusCode();
+    }
+
+    @Override
+    public HttpRequest request() {
+      return response.request();
+    }
+
+    @Override
+    public Optional<HttpResponse<InputStream>> previousResponse() {
+      return response.previousResponse();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return response.headers();
+    }
+
+    @Override
+    public InputStream body() {
+      return body;
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return response.sslSession();
+    }
+
+    @Override
+    public URI uri() {
+      return response.uri();
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return response.version();
+    }
+  }
+}
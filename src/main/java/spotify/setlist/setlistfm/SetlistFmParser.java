@@ -0,0 +1,264 @@
+package spotify.setlist.setlistfm;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import spotify.setlist.data.Setlist;
+
+/**
+ * Reads a setlist from the JSON returned by the setlist.fm API (the /setlist/{id} endpoint), straight from the stream.
+ * Only the fields that are actually needed are read, everything else is skipped without being materialized.
+ * This class is thread-safe.
+ */
+public final class SetlistFmParser {
+  private static final DateTimeFormatter EVENT_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy", Locale.US);
+  private static final String GENERIC_TRACK_NAME = "[Generic Track]";
+  private static final String MEDLEY_SEPARATOR = " / ";
+
+  private SetlistFmParser() {
+  }
+
+  /**
+   * Parse the given setlist.fm setlist JSON.
+   *
+   * @param json the JSON reader (not closed by this method)
+   * @param url the URL the setlist was downloaded from, for error messages
+   * @return the setlist
+   * @throws IOException if the JSON couldn't be read
+   * @throws IllegalStateException if the setlist is incomplete or empty
+   */
+  public static Setlist parse(Reader json, String url) throws IOException {
+    JsonReader reader = new JsonReader(json);
+    Artist artist = null;
+    LocalDate eventDate = null;
+    String city = null;
+    String venue = null;
+    String tourName = "";
+    List<List<RawSong>> sets = null;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "artist":
+          artist = readArtist(reader);
+          break;
+        case "eventDate":
+          eventDate = LocalDate.parse(reader.nextString(), EVENT_DATE_FORMATTER);
+          break;
+        case "venue":
+          String[] venueAndCity = readVenue(reader);
+          venue = venueAndCity[0];
+          city = venueAndCity[1];
+          break;
+        case "tour":
+          String tour = readName(reader);
+          tourName = tour != null ? tour : "";
+          break;
+        case "sets":
+          sets = readSets(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (artist == null || artist.name == null || eventDate == null || venue == null || city == null) {
+      throw new IllegalStateException("Setlist is incomplete: " + url);
+    }
+    if (sets == null || sets.isEmpty()) {
+      throw new IllegalStateException("Setlist mustn't be empty: " + url);
+    }
+
+    Date date = Date.from(eventDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    return new Setlist(artist.name, artist.mbid, date, city, venue, tourName, toSongs(sets, artist));
+  }
+
+  private static List<Setlist.Song> toSongs(List<List<RawSong>> sets, Artist artist) {
+    List<Setlist.Song> setlistSongs = new ArrayList<>();
+    int index = 0;
+    for (List<RawSong> set : sets) {
+      for (RawSong song : set) {
+        index++;
+        String songName = song.name == null || song.name.isBlank() ? GENERIC_TRACK_NAME : song.name;
+        boolean isCover = song.coverArtist != null;
+        String originalArtistName = isCover ? song.coverArtist.name : artist.name;
+        String originalArtistMbid = isCover ? song.coverArtist.mbid : artist.mbid;
+
+        String[] medleyParts = songName.split(MEDLEY_SEPARATOR);
+        boolean isMedleyPart = medleyParts.length > 1;
+        for (String medleyPartOrSingleSong : medleyParts) {
+          setlistSongs.add(new Setlist.Song(index, medleyPartOrSingleSong, artist.name, originalArtistName, artist.mbid, originalArtistMbid,
+            song.info, song.tape, isCover, isMedleyPart));
+        }
+      }
+    }
+    return setlistSongs;
+  }
+
+  private static Artist readArtist(JsonReader reader) throws IOException {
+    Artist artist = new Artist();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "name":
+          artist.name = nextStringOrNull(reader);
+          break;
+        case "mbid":
+          String mbid = nextStringOrNull(reader);
+          artist.mbid = mbid != null && !mbid.isBlank() ? mbid : null;
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return artist;
+  }
+
+  /**
+   * @return the venue name and the city (including the country)
+   */
+  private static String[] readVenue(JsonReader reader) throws IOException {
+    String venueName = null;
+    String cityName = null;
+    String countryName = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "name":
+          venueName = nextStringOrNull(reader);
+          break;
+        case "city":
+          reader.beginObject();
+          while (reader.hasNext()) {
+            switch (reader.nextName()) {
+              case "name":
+                cityName = nextStringOrNull(reader);
+                break;
+              case "country":
+                countryName = readName(reader);
+                break;
+              default:
+                reader.skipValue();
+            }
+          }
+          reader.endObject();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    String city = cityName != null && countryName != null ? cityName + ", " + countryName : null;
+    return new String[]{venueName, city};
+  }
+
+  private static List<List<RawSong>> readSets(JsonReader reader) throws IOException {
+    List<List<RawSong>> sets = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("set".equals(reader.nextName())) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          sets.add(readSet(reader));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return sets;
+  }
+
+  private static List<RawSong> readSet(JsonReader reader) throws IOException {
+    List<RawSong> songs = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("song".equals(reader.nextName())) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          songs.add(readSong(reader));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return songs;
+  }
+
+  private static RawSong readSong(JsonReader reader) throws IOException {
+    RawSong song = new RawSong();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "name":
+          song.name = nextStringOrNull(reader);
+          break;
+        case "tape":
+          song.tape = reader.nextBoolean();
+          break;
+        case "cover":
+          song.coverArtist = readArtist(reader);
+          break;
+        case "info":
+          song.info = nextStringOrNull(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return song;
+  }
+
+  /**
+   * Read the "name" field of an object, skipping everything else
+   */
+  private static String readName(JsonReader reader) throws IOException {
+    String name = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("name".equals(reader.nextName())) {
+        name = nextStringOrNull(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return name;
+  }
+
+  private static String nextStringOrNull(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+
+  private static class Artist {
+    private String name;
+    private String mbid;
+  }
+
+  private static class RawSong {
+    private String name;
+    private boolean tape;
+    private Artist coverArtist;
+    private String info;
+  }
+}
@@ -0,0 +1,206 @@
+package spotify.setlist.setlistfm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import spotify.setlist.util.StatsProvider;
+import spotify.setlist.util.TokenBucket;
+import spotify.util.SpotifyLogger;
+import spotify.util.SpotifyUtils;
+
+/**
+ * Spreads the setlist.fm API requests across all configured API keys (comma-separated in
+ * setlist_bot.setlist_fm_api_token), since setlist.fm only allows a few requests per second per key.
+ * Every key has its own token bucket. Requests go to the next key that has a token available right away,
+ * or wait for the key that becomes available first.
+ * <p>
+ * A key that gets throttled (429 Too Many Requests) is put on cooldown and the request is retried with another key.
+ * A request never waits for cooldowns longer than setlist_bot.setlistfm_max_cooldown_wait_ms in total. If every key
+ * is cooling down for longer than that (e.g. because the daily quota is used up), it fails right away instead.
+ */
+@Component
+public class SetlistFmRequestGovernor implements StatsProvider {
+  private static final String API_TOKEN_ENV = "setlist_bot.setlist_fm_api_token";
+  private static final String REQUESTS_PER_SECOND_ENV = "setlist_bot.setlistfm_requests_per_second";
+  private static final String MAX_COOLDOWN_WAIT_MS_ENV = "setlist_bot.setlistfm_max_cooldown_wait_ms";
+  private static final double DEFAULT_REQUESTS_PER_SECOND = 2.0;
+  private static final int DEFAULT_MAX_COOLDOWN_WAIT_MS = 10000;
+  private static final int DEFAULT_COOLDOWN_SECONDS = 2;
+  private static final int MAX_COOLDOWN_SECONDS = (int) TimeUnit.DAYS.toSeconds(1);
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+  private static final String API_KEY_HEADER = "x-api-key";
+
+  private final SetlistFmHttpClient httpClient;
+  private final SpotifyLogger logger;
+  private final List<ApiKey> apiKeys;
+  private final AtomicInteger nextApiKey;
+  private final long maxCooldownWaitMillis;
+  private final AtomicLong rejectedRequests;
+
+  SetlistFmRequestGovernor(SetlistFmHttpClient httpClient, SpotifyLogger logger, Environment environment) {
+    this.httpClient = httpClient;
+    this.logger = logger;
+    double requestsPerSecond = environment.getProperty(REQUESTS_PER_SECOND_ENV, Double.class, DEFAULT_REQUESTS_PER_SECOND);
+    String apiTokens = environment.getProperty(API_TOKEN_ENV, "");
+    this.apiKeys = Arrays.stream(apiTokens.split(","))
+      .map(String::trim)
+      .filter(token -> !token.isEmpty())
+      .distinct()
+      .map(token -> new ApiKey(token, requestsPerSecond))
+      .collect(Collectors.toList());
+    this.nextApiKey = new AtomicInteger();
+    this.maxCooldownWaitMillis = environment.getProperty(MAX_COOLDOWN_WAIT_MS_ENV, Integer.class, DEFAULT_MAX_COOLDOWN_WAIT_MS);
+    this.rejectedRequests = new AtomicLong();
+  }
+
+  public int getApiKeyCount() {
+    return apiKeys.size();
+  }
+
+  /**
+   * Send a GET request to setlist.fm with the API key header set, waiting for a permit of one of the keys first.
+   * Throttled requests are retried with another key (at most once per key).
+   *
+   * @param uri the URI
+   * @param headers the request headers (without the API key)
+   * @return the response, with the body still to be read (and closed)
+   * @throws IOException if the request failed
+   * @throws SetlistFmBusyException if the request was throttled for every attempt, or all keys are cooling down for too long
+   * @throws InterruptedException if the calling thread was interrupted while waiting
+   */
+  public HttpResponse<InputStream> get(URI uri, Map<String, String> headers) throws IOException, InterruptedException {
+    if (apiKeys.isEmpty()) {
+      throw new IllegalStateException(API_TOKEN_ENV + " environment variable is missing!");
+    }
+    long waitDeadline = System.currentTimeMillis() + maxCooldownWaitMillis;
+    for (int attempt = 1; attempt <= apiKeys.size() + 1; attempt++) {
+      ApiKey apiKey = acquireApiKey(waitDeadline);
+      Map<String, String> requestHeaders = new LinkedHashMap<>(headers);
+      requestHeaders.put(API_KEY_HEADER, apiKey.token);
+      HttpResponse<InputStream> response = httpClient.get(uri, requestHeaders);
+      if (response.statusCode() != HTTP_TOO_MANY_REQUESTS) {
+        return response;
+      }
+      response.body().close();
+      int retryAfterSeconds = response.headers().firstValue("Retry-After")
+        .map(SetlistFmRequestGovernor::parseSeconds)
+        .orElse(DEFAULT_COOLDOWN_SECONDS);
+      apiKey.coolDown(retryAfterSeconds);
+      logger.warning(String.format("Throttled by setlist.fm (API key %s), cooling it off for %ds", apiKey.getMaskedToken(), retryAfterSeconds));
+    }
+    throw new SetlistFmBusyException("setlist.fm is throttling all API keys, try again later");
+  }
+
+  private ApiKey acquireApiKey(long waitDeadline) {
+    int start = Math.floorMod(nextApiKey.getAndIncrement(), apiKeys.size());
+    long now = System.currentTimeMillis();
+    ApiKey firstAvailable = null;
+    for (int i = 0; i < apiKeys.size(); i++) {
+      ApiKey apiKey = apiKeys.get((start + i) % apiKeys.size());
+      if (apiKey.cooldownUntil <= now && apiKey.tokenBucket.tryAcquire()) {
+        apiKey.requests.incrementAndGet();
+        return apiKey;
+      }
+      if (firstAvailable == null || apiKey.cooldownUntil < firstAvailable.cooldownUntil) {
+        firstAvailable = apiKey;
+      }
+    }
+
+    // No key has a token right now, so wait for the one that's off cooldown first (unless that takes too long)
+    if (firstAvailable.cooldownUntil > waitDeadline) {
+      rejectedRequests.incrementAndGet();
+      throw new SetlistFmBusyException(String.format("All setlist.fm API keys are cooling down for at least another %ds, try again later",
+        TimeUnit.MILLISECONDS.toSeconds(firstAvailable.cooldownUntil - now)));
+    }
+    long cooldownMillis = firstAvailable.cooldownUntil - now;
+    if (cooldownMillis > 0) {
+      SpotifyUtils.sneakySleep(cooldownMillis);
+      firstAvailable.totalWaitMillis.addAndGet(cooldownMillis);
+    }
+    firstAvailable.totalWaitMillis.addAndGet(firstAvailable.tokenBucket.acquire());
+    firstAvailable.requests.incrementAndGet();
+    return firstAvailable;
+  }
+
+  private static int parseSeconds(String retryAfter) {
+    try {
+      return Math.min(MAX_COOLDOWN_SECONDS, Math.max(1, Integer.parseInt(retryAfter.trim())));
+    } catch (NumberFormatException e) {
+      return DEFAULT_COOLDOWN_SECONDS;
+    }
+  }
+
+  @Override
+  public String getStatsName() {
+    return "setlistFmGovernor";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("apiKeys", apiKeys.size());
+    stats.put("maxCooldownWaitMillis", maxCooldownWaitMillis);
+    stats.put("rejectedRequests", rejectedRequests.get());
+    List<Map<String, Object>> apiKeyStats = new ArrayList<>();
+    for (ApiKey apiKey : apiKeys) {
+      apiKeyStats.add(apiKey.getStats());
+    }
+    stats.put("usage", apiKeyStats);
+    return stats;
+  }
+
+  private static class ApiKey {
+    private final String token;
+    private final TokenBucket tokenBucket;
+    private final AtomicLong requests;
+    private final AtomicLong throttleEvents;
+    private final AtomicLong totalWaitMillis;
+
+    private volatile long cooldownUntil;
+
+    ApiKey(String token, double requestsPerSecond) {
+      this.token = token;
+      this.tokenBucket = new TokenBucket(requestsPerSecond, requestsPerSecond);
+      this.requests = new AtomicLong();
+      this.throttleEvents = new AtomicLong();
+      this.totalWaitMillis = new AtomicLong();
+    }
+
+    void coolDown(int seconds) {
+      throttleEvents.incrementAndGet();
+      cooldownUntil = Math.max(cooldownUntil, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds));
+    }
+
+    /**
+     * @return the last few characters of the token, to tell the keys apart without leaking them in the stats
+     */
+    String getMaskedToken() {
+      return "..." + token.substring(Math.max(0, token.length() - 4));
+    }
+
+    Map<String, Object> getStats() {
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("apiKey", getMaskedToken());
+      stats.put("requests", requests.get());
+      stats.put("throttleEvents", throttleEvents.get());
+      stats.put("totalWaitMillis", totalWaitMillis.get());
+      stats.put("availablePermits", Math.max(0, tokenBucket.getAvailableTokens()));
+      stats.put("cooldownRemainingMillis", Math.max(0, cooldownUntil - System.currentTimeMillis()));
+      return stats;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package spotify.setlist.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Forwards the progress messages of a single conversion to every websocket session that's waiting for it.
+ * Sessions that join later immediately receive the most recent message.
+ */
+public class ConversionProgress {
+  private final List<WebSocketSession> sessions;
+  private String lastMessage;
+
+  public ConversionProgress() {
+    this.sessions = new CopyOnWriteArrayList<>();
+  }
+
+  public ConversionProgress(WebSocketSession session) {
+    this();
+    attach(session);
+  }
+
+  /**
+   * Attach another session to this conversion.
+   *
+   * @param session the {@link WebSocketSession}
+   */
+  public synchronized void attach(WebSocketSession session) {
+    sessions.add(session);
+    if (lastMessage != null) {
+      SetlistUtils.attemptSendMessage(session, lastMessage);
+    }
+  }
+
+  /**
+   * Send a progress message to all attached sessions (errors are silently ignored).
+   *
+   * @param message the message string to send
+   */
+  public synchronized void send(String message) {
+    lastMessage = message;
+    for (WebSocketSession session : sessions) {
+      SetlistUtils.attemptSendMessage(session, message);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package spotify.setlist.util;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * A simple size-bounded, thread-safe LRU cache where every entry additionally expires
+ * after a fixed time-to-live. Keeps track of hits, misses, evictions, and expirations,
+ * so that the cache can be sized properly.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ExpiringLruCache<K, V> {
+  private final int maxSize;
+  private final long ttlMillis;
+  private final long maxWeight;
+  private final ToIntFunction<V> weigher;
+  private final LinkedHashMap<K, Entry<V>> entries;
+
+  private long weight;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+
+  public ExpiringLruCache(int maxSize, Duration ttl) {
+    this(maxSize, ttl, Long.MAX_VALUE, value -> 0);
+  }
+
+  /**
+   * Create a cache that's additionally bounded by the total weight of its values, for values that greatly differ in size.
+   * The most recently used entry is always kept, even if it exceeds the maximum weight on its own.
+   *
+   * @param maxSize the maximum number of entries
+   * @param ttl the time-to-live of every entry
+   * @param maxWeight the maximum total weight of all entries
+   * @param weigher calculates the weight of a value (e.g. the number of elements it holds)
+   */
+  public ExpiringLruCache(int maxSize, Duration ttl, long maxWeight, ToIntFunction<V> weigher) {
+    this.maxSize = maxSize;
+    this.ttlMillis = ttl.toMillis();
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        if (size() > ExpiringLruCache.this.maxSize) {
+          evictions++;
+          weight -= eldest.getValue().weight;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Get the cached value for the given key. Expired entries are removed and count as miss.
+   *
+   * @param key the key
+   * @return the value, or null if there is no (valid) entry
+   */
+  public synchronized V get(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    if (isExpired(entry, System.currentTimeMillis())) {
+      entries.remove(key);
+      weight -= entry.weight;
+      expirations++;
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.getValue();
+  }
+
+  public void put(K key, V value) {
+    put(key, value, System.currentTimeMillis());
+  }
+
+  /**
+   * Put a value into the cache with an explicit creation timestamp (used to restore snapshots).
+   * Entries that would already be expired are silently dropped.
+   *
+   * @param key the key
+   * @param value the value
+   * @param createdAt the creation timestamp in epoch millis
+   */
+  public synchronized void put(K key, V value, long createdAt) {
+    Entry<V> entry = new Entry<>(value, createdAt, weigher.applyAsInt(value));
+    if (!isExpired(entry, System.currentTimeMillis())) {
+      Entry<V> previous = entries.put(key, entry);
+      if (previous != null) {
+        weight -= previous.weight;
+      }
+      weight += entry.weight;
+      evictOverweight();
+    }
+  }
+
+  private void evictOverweight() {
+    Iterator<Entry<V>> eldestFirst = entries.values().iterator();
+    while (weight > maxWeight && entries.size() > 1) {
+      weight -= eldestFirst.next().weight;
+      eldestFirst.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * Remove the entry for the given key, without counting it as hit or miss.
+   *
+   * @param key the key
+   * @return the removed value, or null if there was no (valid) entry
+   */
+  public synchronized V remove(K key) {
+    Entry<V> entry = entries.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+    if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+      return null;
+    }
+    return entry.getValue();
+  }
+
+  public synchronized void invalidate(K key) {
+    Entry<V> entry = entries.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+    weight = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Create a copy of all non-expired entries, from least to most recently used.
+   *
+   * @return the copied entries
+   */
+  public synchronized Map<K, Entry<V>> snapshot() {
+    long now = System.currentTimeMillis();
+    Map<K, Entry<V>> copy = new LinkedHashMap<>();
+    for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+      if (!isExpired(e.getValue(), now)) {
+        copy.put(e.getKey(), e.getValue());
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Get the current statistics of this cache (size, hits, misses, evictions, expirations, hit rate).
+   *
+   * @return the statistics as ordered map
+   */
+  public synchronized Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("size", entries.size());
+    stats.put("maxSize", maxSize);
+    stats.put("ttlSeconds", ttlMillis / 1000);
+    if (maxWeight != Long.MAX_VALUE) {
+      stats.put("weight", weight);
+      stats.put("maxWeight", maxWeight);
+    }
+    stats.put("hits", hits);
+    stats.put("misses", misses);
+    stats.put("evictions", evictions);
+    stats.put("expirations", expirations);
+    long lookups = hits + misses;
+    stats.put("hitRate", lookups > 0 ? (double) hits / lookups : 0.0);
+    return stats;
+  }
+
+  private boolean isExpired(Entry<V> entry, long now) {
+    return now - entry.getCreatedAt() > ttlMillis;
+  }
+
+  public static class Entry<V> {
+    private final V value;
+    private final long createdAt;
+    private final int weight;
+
+    Entry(V value, long createdAt, int weight) {
+      this.value = value;
+      this.createdAt = createdAt;
+      this.weight = weight;
+    }
+
+    public V getValue() {
+      return value;
+    }
+
+    public long getCreatedAt() {
+      return createdAt;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package spotify.setlist.util;
+
+/**
+ * Thresholded Levenshtein distance check. Since the matching only ever needs to know whether two strings
+ * are within a certain distance of each other (and not the exact distance), most comparisons can be
+ * rejected long before the full distance matrix would have been computed:
+ * <ol>
+ *   <li>by the difference in length alone,</li>
+ *   <li>by the number of shared character bigrams (two strings within distance k share at least
+ *       <code>max(length) - 1 - 2k</code> bigrams),</li>
+ *   <li>by a banded computation that stops as soon as an entire row exceeds the limit.</li>
+ * </ol>
+ * The working buffers are kept per thread, so no arrays are allocated for each comparison.
+ */
+public class FuzzyMatcher {
+  private static final int BIGRAM_BUCKETS = 1024;
+  private static final int IMPOSSIBLE = Integer.MAX_VALUE / 2;
+
+  private static final ThreadLocal<int[]> BIGRAM_COUNTS = ThreadLocal.withInitial(() -> new int[BIGRAM_BUCKETS]);
+  private static final ThreadLocal<int[][]> DISTANCE_ROWS = ThreadLocal.withInitial(() -> new int[][]{new int[64], new int[64]});
+
+  /**
+   * Check if the Levenshtein distance between the two given strings is at most the given maximum.
+   *
+   * @param a the first string
+   * @param b the second string
+   * @param maxDistance the maximum allowed distance
+   * @return true if the distance is within the limit
+   */
+  public static boolean isWithinDistance(CharSequence a, CharSequence b, int maxDistance) {
+    if (maxDistance < 0 || Math.abs(a.length() - b.length()) > maxDistance) {
+      return false;
+    }
+    if (maxDistance >= Math.max(a.length(), b.length())) {
+      return true;
+    }
+    if (!hasEnoughCommonBigrams(a, b, maxDistance)) {
+      return false;
+    }
+    return boundedDistance(a, b, maxDistance) <= maxDistance;
+  }
+
+  /**
+   * Bigrams are counted in hashed buckets, which can only ever overestimate the number of common bigrams.
+   * A rejection here is therefore always correct.
+   */
+  private static boolean hasEnoughCommonBigrams(CharSequence a, CharSequence b, int maxDistance) {
+    int requiredCommonBigrams = Math.max(a.length(), b.length()) - 1 - 2 * maxDistance;
+    if (requiredCommonBigrams <= 0) {
+      return true;
+    }
+
+    int[] bigramCounts = BIGRAM_COUNTS.get();
+    for (int i = 1; i < a.length(); i++) {
+      bigramCounts[bigramBucket(a, i)]++;
+    }
+    int commonBigrams = 0;
+    for (int i = 1; i < b.length(); i++) {
+      int bucket = bigramBucket(b, i);
+      if (bigramCounts[bucket] > 0) {
+        bigramCounts[bucket]--;
+        commonBigrams++;
+      }
+    }
+    for (int i = 1; i < a.length(); i++) {
+      bigramCounts[bigramBucket(a, i)] = 0;
+    }
+    return commonBigrams >= requiredCommonBigrams;
+  }
+
+  private static int bigramBucket(CharSequence s, int secondCharIndex) {
+    return (s.charAt(secondCharIndex - 1) * 31 + s.charAt(secondCharIndex)) & (BIGRAM_BUCKETS - 1);
+  }
+
+  /**
+   * Levenshtein distance, only computed within a diagonal band of the given width.
+   *
+   * @return the exact distance if it's within the limit, otherwise any value larger than the limit
+   */
+  private static int boundedDistance(CharSequence a, CharSequence b, int maxDistance) {
+    int n = a.length();
+    int m = b.length();
+    int[][] rows = DISTANCE_ROWS.get();
+    if (rows[0].length < m + 1) {
+      rows[0] = new int[m + 1];
+      rows[1] = new int[m + 1];
+    }
+    int[] previous = rows[0];
+    int[] current = rows[1];
+
+    for (int j = 0; j <= m; j++) {
+      previous[j] = j <= maxDistance ? j : IMPOSSIBLE;
+    }
+    for (int i = 1; i <= n; i++) {
+      int from = Math.max(1, i - maxDistance);
+      int to = Math.min(m, i + maxDistance);
+      current[0] = i <= maxDistance ? i : IMPOSSIBLE;
+      if (from > 1) {
+        current[from - 1] = IMPOSSIBLE;
+      }
+      int rowMinimum = current[0];
+      char ca = a.charAt(i - 1);
+      for (int j = from; j <= to; j++) {
+        int substitution = previous[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+        int deletion = previous[j] + 1;
+        int insertion = current[j - 1] + 1;
+        int distance = Math.min(substitution, Math.min(deletion, insertion));
+        current[j] = distance;
+        rowMinimum = Math.min(rowMinimum, distance);
+      }
+      if (to < m) {
+        current[to + 1] = IMPOSSIBLE;
+      }
+      if (rowMinimum > maxDistance) {
+        return rowMinimum;
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[m];
+  }
+}
@@ -0,0 +1,100 @@
+package spotify.setlist.util;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * A string together with the normalized variants of it that are needed for matching. Each variant is
+ * only computed once (on first use), so the same track or song name can be compared over and over again
+ * without repeatedly purifying it. The comparisons behave exactly like their counterparts in {@link SetlistUtils}.
+ */
+public class NormalizedText {
+  private final String value;
+  private String lowerCase;
+  private String purified;
+  private String lowerCasePurified;
+  private NormalizedText purifiedText;
+
+  public NormalizedText(String value) {
+    this.value = value;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  public String getLowerCase() {
+    if (lowerCase == null) {
+      lowerCase = value.toLowerCase();
+    }
+    return lowerCase;
+  }
+
+  /**
+   * @return the result of {@link SetlistUtils#purifyString} for this text
+   */
+  public String getPurified() {
+    if (purified == null) {
+      purified = TextNormalizer.purify(value);
+    }
+    return purified;
+  }
+
+  /**
+   * @return the purified version of the lower-cased text (which isn't always the same as the purified text)
+   */
+  public String getLowerCasePurified() {
+    if (lowerCasePurified == null) {
+      lowerCasePurified = TextNormalizer.purify(getLowerCase());
+    }
+    return lowerCasePurified;
+  }
+
+  /**
+   * @return the purified text as {@link NormalizedText} of its own
+   */
+  public NormalizedText getPurifiedText() {
+    if (purifiedText == null) {
+      purifiedText = new NormalizedText(getPurified());
+    }
+    return purifiedText;
+  }
+
+  public boolean equalsIgnoreCase(NormalizedText other) {
+    return value.equalsIgnoreCase(other.value);
+  }
+
+  /**
+   * @see SetlistUtils#containsIgnoreCase
+   */
+  public boolean containsIgnoreCase(NormalizedText contained) {
+    return getLowerCase().contains(contained.getLowerCase())
+      || getLowerCasePurified().contains(contained.getLowerCasePurified());
+  }
+
+  /**
+   * @see SetlistUtils#containsIgnoreCaseNormalized
+   */
+  public boolean containsIgnoreCaseNormalized(NormalizedText contained) {
+    return containsIgnoreCase(contained) || getPurifiedText().containsIgnoreCase(contained.getPurifiedText());
+  }
+
+  /**
+   * @see SetlistUtils#isStartContained
+   */
+  public boolean isStartContained(NormalizedText other) {
+    if (value.equals(other.value)) {
+      return true;
+    }
+    String a = getPurified();
+    String b = other.getPurified();
+    if (a.length() >= b.length()) {
+      return StringUtils.startsWithIgnoreCase(a, b);
+    }
+    return StringUtils.startsWithIgnoreCase(b, a);
+  }
+
+  @Override
+  public String toString() {
+    return value;
+  }
+}
@@ -2,9 +2,8 @@ package spotify.setlist.util;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.text.Normalizer;
-import java.text.SimpleDateFormat;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
@@ -23,8 +22,7 @@ import spotify.setlist.data.SetlistCreationOptions;
 public class SetlistUtils {
   private static final String SETLIST_DESCRIPTION = "Generated with: https://setlistfm.selbi.club";
   private static final int MAX_PLAYLIST_NAME_LENGTH = 100;
-  private static final Pattern STRING_PURIFICATION_REGEX = Pattern.compile("[^\\p{L}\\p{N}]");
-  private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.US);
   private static final Pattern SETLIST_FM_URL_ID_PATTERN = Pattern.compile(".*-([a-z0-9]{7,9})\\.html$");
 
   private static final List<String> ALTERNATE_VERSION_WORDS = List.of(
@@ -103,7 +101,7 @@ public class SetlistUtils {
    */
   public static String assembleDescription(Setlist setlist) {
     if (setlist.hasTour()) {
-      return String.format("%s (%s) // %s", setlist.venueAndCity(), DATE_FORMAT.format(setlist.getEventDate()), SETLIST_DESCRIPTION);
+      return String.format("%s (%s) // %s", setlist.venueAndCity(), DATE_FORMAT.format(setlist.getEventDate().toInstant().atZone(ZoneId.systemDefault())), SETLIST_DESCRIPTION);
     }
     return SETLIST_DESCRIPTION;
   }
@@ -120,13 +118,7 @@ public class SetlistUtils {
    * @return a purified, ASCII-friendly title string
    */
   public static String purifyString(String input) {
-    String normalizedSpecialLetters = normalizeSpecialLetters(input);
-    String basePurified = STRING_PURIFICATION_REGEX.matcher(normalizedSpecialLetters).replaceAll(" ");
-    return Normalizer.normalize(basePurified, Normalizer.Form.NFKD)
-      .replaceAll("\\p{M}", "")
-      .replaceAll("\\s+", " ")
-      .toLowerCase()
-      .trim();
+    return TextNormalizer.purify(input);
   }
 
   /**
@@ -137,26 +129,7 @@ public class SetlistUtils {
    * @return normalized string with substitutions applied
    */
   public static String normalizeSpecialLetters(String input) {
-    return input
-      // German
-      .replace("ä", "ae").replace("Ä", "Ae")
-      .replace("ö", "oe").replace("Ö", "Oe")
-      .replace("ü", "ue").replace("Ü", "Ue")
-      .replace("ß", "ss")
-
-      // French & Latin ligatures
-      .replace("œ", "oe").replace("Œ", "OE")
-      .replace("æ", "ae").replace("Æ", "AE")
-
-      // Turkish dotted/dotless I
-      .replace("ı", "i").replace("İ", "I")
-
-      // Nordic/Eastern European specials
-      .replace("ø", "o").replace("Ø", "O")
-      .replace("å", "a").replace("Å", "A")
-      .replace("ł", "l").replace("Ł", "L")
-      .replace("đ", "d").replace("Đ", "D")
-      .replace("þ", "th").replace("Þ", "Th");
+    return TextNormalizer.normalizeSpecialLetters(input);
   }
 
   /**
@@ -227,8 +200,27 @@ public class SetlistUtils {
    * @return true if it's a live song
    */
   public static boolean containsAlternateVersionWord(String setlistName, String spotifyName) {
-    return ALTERNATE_VERSION_REGEX.matcher(spotifyName).find()
-      && ALTERNATE_VERSION_WORDS.stream().noneMatch(word -> containsIgnoreCase(setlistName, word));
+    return isAlternateVersionName(spotifyName) && !mentionsAlternateVersionWord(setlistName);
+  }
+
+  /**
+   * The Spotify half of {@link SetlistUtils#containsAlternateVersionWord}.
+   *
+   * @param spotifyName the name as it was returned by Spotify
+   * @return true if the name contains an alternate version word past the first hyphen or bracket
+   */
+  public static boolean isAlternateVersionName(String spotifyName) {
+    return ALTERNATE_VERSION_REGEX.matcher(spotifyName).find();
+  }
+
+  /**
+   * The setlist.fm half of {@link SetlistUtils#containsAlternateVersionWord}.
+   *
+   * @param setlistName the name as it was provided by setlist.fm
+   * @return true if the name itself already mentions any of the alternate version words
+   */
+  public static boolean mentionsAlternateVersionWord(String setlistName) {
+    return ALTERNATE_VERSION_WORDS.stream().anyMatch(word -> containsIgnoreCase(setlistName, word));
   }
 
   /**
@@ -249,12 +241,8 @@ public class SetlistUtils {
    * @return the extracted core part
    */
   public static String extractCoreTitle(String title, boolean purify) {
-    String[] parts = title.split("[:.\\-()\\[\\]]"); // Split on colon, dash, or parentheses
-    String coreTitle = Arrays.stream(parts)
-      .map(String::trim)                // Remove extra spaces
-      .filter(s -> s.length() > 5)      // Ignore too-short segments
-      .reduce((first, second) -> second) // Take the last meaningful part
-      .orElse(title);
+    // Split on colon, dash, or parentheses and take the last meaningful (not too short) part
+    String coreTitle = TextNormalizer.lastSegmentLongerThan(title, 5);
     return purify ? purifyString(coreTitle) : coreTitle;
   }
 
@@ -266,7 +254,7 @@ public class SetlistUtils {
    */
   public static boolean isPureText(String... texts) {
     for (String s : texts) {
-      if (!s.matches("[A-Za-z ]+")) {
+      if (!TextNormalizer.isPureText(s)) {
         return false;
       }
     }
@@ -280,15 +268,18 @@ public class SetlistUtils {
    * @param message the message string to send
    */
   public static void attemptSendMessage(WebSocketSession session, String message) {
-    if (session.isOpen()) {
-      try {
-        session.sendMessage(new TextMessage(message));
-      } catch (IOException e) {
-        // >>> Silently drop to avoid log clutter <<<
-        // The idea is that messages are just visual sugar for the user, at the end of the day it's
-        // about the playlists. Non-delivered messages shouldn't cause any issues for the creation
-        // process itself, and if a user decides to close the tab during creation it should still
-        // create the playlist in the background.
+    // Sessions may receive messages from multiple threads (e.g. coalesced conversions), which the websocket API doesn't allow
+    synchronized (session) {
+      if (session.isOpen()) {
+        try {
+          session.sendMessage(new TextMessage(message));
+        } catch (IOException e) {
+          // >>> Silently drop to avoid log clutter <<<
+          // The idea is that messages are just visual sugar for the user, at the end of the day it's
+          // about the playlists. Non-delivered messages shouldn't cause any issues for the creation
+          // process itself, and if a user decides to close the tab during creation it should still
+          // create the playlist in the background.
+        }
       }
     }
   }
@@ -0,0 +1,19 @@
+package spotify.setlist.util;
+
+import java.util.Map;
+
+/**
+ * Implemented by any component that wants to expose its runtime statistics on the /stats endpoint.
+ */
+public interface StatsProvider {
+
+  /**
+   * @return the name under which the statistics are listed
+   */
+  String getStatsName();
+
+  /**
+   * @return the current statistics, as JSON-serializable map
+   */
+  Map<String, Object> getStats();
+}
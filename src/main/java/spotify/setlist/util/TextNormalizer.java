@@ -0,0 +1,253 @@
+package spotify.setlist.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Single-pass implementation of the text normalization used for matching song titles and artist names.
+ * The output is exactly the same as the original chain of replace calls, regex passes and NFKD
+ * normalization, it just avoids creating a new intermediate string for every single step.
+ * Pure ASCII input (which is the vast majority) never has to go through NFKD at all.
+ */
+public class TextNormalizer {
+  private static final char FIRST_SPECIAL_LETTER = 'À';
+  private static final String[] SPECIAL_LETTERS = new String['ƀ' - FIRST_SPECIAL_LETTER];
+
+  static {
+    // German
+    addSpecialLetter('ä', "ae");
+    addSpecialLetter('Ä', "Ae");
+    addSpecialLetter('ö', "oe");
+    addSpecialLetter('Ö', "Oe");
+    addSpecialLetter('ü', "ue");
+    addSpecialLetter('Ü', "Ue");
+    addSpecialLetter('ß', "ss");
+
+    // French & Latin ligatures
+    addSpecialLetter('œ', "oe");
+    addSpecialLetter('Œ', "OE");
+    addSpecialLetter('æ', "ae");
+    addSpecialLetter('Æ', "AE");
+
+    // Turkish dotted/dotless I
+    addSpecialLetter('ı', "i");
+    addSpecialLetter('İ', "I");
+
+    // Nordic/Eastern European specials
+    addSpecialLetter('ø', "o");
+    addSpecialLetter('Ø', "O");
+    addSpecialLetter('å', "a");
+    addSpecialLetter('Å', "A");
+    addSpecialLetter('ł', "l");
+    addSpecialLetter('Ł', "L");
+    addSpecialLetter('đ', "d");
+    addSpecialLetter('Đ', "D");
+    addSpecialLetter('þ', "th");
+    addSpecialLetter('Þ', "Th");
+  }
+
+  private static void addSpecialLetter(char letter, String replacement) {
+    SPECIAL_LETTERS[letter - FIRST_SPECIAL_LETTER] = replacement;
+  }
+
+  private static String getSpecialLetterReplacement(int codePoint) {
+    int tableIndex = codePoint - FIRST_SPECIAL_LETTER;
+    return tableIndex >= 0 && tableIndex < SPECIAL_LETTERS.length ? SPECIAL_LETTERS[tableIndex] : null;
+  }
+
+  /**
+   * See {@link SetlistUtils#purifyString}.
+   *
+   * @param input the raw string
+   * @return the purified string
+   */
+  public static String purify(String input) {
+    if (isAscii(input)) {
+      return purifyAscii(input);
+    }
+
+    // Special letters and the removal of everything that isn't a letter or digit
+    StringBuilder basePurified = new StringBuilder(input.length() + 8);
+    boolean nonAscii = false;
+    for (int i = 0; i < input.length(); ) {
+      int codePoint = input.codePointAt(i);
+      i += Character.charCount(codePoint);
+      String specialLetterReplacement = getSpecialLetterReplacement(codePoint);
+      if (specialLetterReplacement != null) {
+        basePurified.append(specialLetterReplacement);
+      } else if (isLetterOrNumber(codePoint)) {
+        basePurified.appendCodePoint(codePoint);
+        nonAscii |= codePoint > 0x7F;
+      } else {
+        basePurified.append(' ');
+      }
+    }
+
+    // Diacritics and whitespace (NFKD may turn a single letter into several characters, hence the second pass)
+    CharSequence decomposed = nonAscii ? Normalizer.normalize(basePurified, Normalizer.Form.NFKD) : basePurified;
+    StringBuilder purified = new StringBuilder(decomposed.length());
+    boolean inWhitespace = false;
+    for (int i = 0; i < decomposed.length(); ) {
+      int codePoint = Character.codePointAt(decomposed, i);
+      i += Character.charCount(codePoint);
+      if (isMark(codePoint)) {
+        continue;
+      }
+      if (isRegexWhitespace(codePoint)) {
+        if (!inWhitespace) {
+          purified.append(' ');
+          inWhitespace = true;
+        }
+      } else {
+        purified.appendCodePoint(codePoint);
+        inWhitespace = false;
+      }
+    }
+
+    // Lower-casing is context and locale dependent (e.g. the Greek final sigma), so it's left to String itself
+    return purified.toString().toLowerCase().trim();
+  }
+
+  /**
+   * ASCII-only version of {@link TextNormalizer#purify}: letters and digits are kept in lower case,
+   * anything in between them is collapsed into a single space.
+   */
+  private static String purifyAscii(String input) {
+    boolean localeSafeLowerCase = isLocaleSafeAsciiLowerCase();
+    StringBuilder purified = new StringBuilder(input.length());
+    boolean pendingSpace = false;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (isAsciiLetterOrDigit(c)) {
+        if (pendingSpace && purified.length() > 0) {
+          purified.append(' ');
+        }
+        pendingSpace = false;
+        purified.append(c >= 'A' && c <= 'Z' && localeSafeLowerCase ? (char) (c + ('a' - 'A')) : c);
+      } else {
+        pendingSpace = true;
+      }
+    }
+    return localeSafeLowerCase ? purified.toString() : purified.toString().toLowerCase();
+  }
+
+  /**
+   * See {@link SetlistUtils#normalizeSpecialLetters}.
+   *
+   * @param input base string
+   * @return normalized string with substitutions applied
+   */
+  public static String normalizeSpecialLetters(String input) {
+    StringBuilder normalized = null;
+    for (int i = 0; i < input.length(); i++) {
+      String specialLetterReplacement = getSpecialLetterReplacement(input.charAt(i));
+      if (specialLetterReplacement != null) {
+        if (normalized == null) {
+          normalized = new StringBuilder(input.length() + 8).append(input, 0, i);
+        }
+        normalized.append(specialLetterReplacement);
+      } else if (normalized != null) {
+        normalized.append(input.charAt(i));
+      }
+    }
+    return normalized != null ? normalized.toString() : input;
+  }
+
+  /**
+   * @return true if the given string only consists of A-Z, a-z and spaces (and isn't empty)
+   */
+  public static boolean isPureText(String input) {
+    if (input.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (c != ' ' && !(c >= 'A' && c <= 'Z') && !(c >= 'a' && c <= 'z')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Splits the given title on any of <code>:.-()[]</code> and returns the last trimmed part
+   * that's longer than the given minimum length, or the title itself if there is no such part.
+   *
+   * @param title the title
+   * @param minLength the length a part must exceed
+   * @return the last meaningful part
+   */
+  public static String lastSegmentLongerThan(String title, int minLength) {
+    String lastSegment = null;
+    int segmentStart = 0;
+    for (int i = 0; i <= title.length(); i++) {
+      if (i == title.length() || isTitleSeparator(title.charAt(i))) {
+        String segment = title.substring(segmentStart, i).trim();
+        if (segment.length() > minLength) {
+          lastSegment = segment;
+        }
+        segmentStart = i + 1;
+      }
+    }
+    return lastSegment != null ? lastSegment : title;
+  }
+
+  private static boolean isTitleSeparator(char c) {
+    return c == ':' || c == '.' || c == '-' || c == '(' || c == ')' || c == '[' || c == ']';
+  }
+
+  private static boolean isAscii(String input) {
+    for (int i = 0; i < input.length(); i++) {
+      if (input.charAt(i) > 0x7F) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isAsciiLetterOrDigit(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+  }
+
+  /**
+   * Turkish and Azerbaijani lower-case the ASCII I to a dotless ı, every other locale simply maps A-Z to a-z
+   */
+  private static boolean isLocaleSafeAsciiLowerCase() {
+    String language = Locale.getDefault().getLanguage();
+    return !"tr".equals(language) && !"az".equals(language);
+  }
+
+  /**
+   * Same as <code>[\p{L}\p{N}]</code>
+   */
+  private static boolean isLetterOrNumber(int codePoint) {
+    switch (Character.getType(codePoint)) {
+      case Character.UPPERCASE_LETTER:
+      case Character.LOWERCASE_LETTER:
+      case Character.TITLECASE_LETTER:
+      case Character.MODIFIER_LETTER:
+      case Character.OTHER_LETTER:
+      case Character.DECIMAL_DIGIT_NUMBER:
+      case Character.LETTER_NUMBER:
+      case Character.OTHER_NUMBER:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Same as <code>\p{M}</code>
+   */
+  private static boolean isMark(int codePoint) {
+    int type = Character.getType(codePoint);
+    return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.COMBINING_SPACING_MARK;
+  }
+
+  /**
+   * Same as <code>\s</code> (without UNICODE_CHARACTER_CLASS)
+   */
+  private static boolean isRegexWhitespace(int codePoint) {
+    return codePoint == ' ' || codePoint == '\t' || codePoint == '\n' || codePoint == 0x0B || codePoint == '\f' || codePoint == '\r';
+  }
+}
@@ -0,0 +1,79 @@
+package spotify.setlist.util;
+
+/**
+ * A simple thread-safe token bucket. Tokens are refilled continuously at the given rate,
+ * up to the given capacity (which is the maximum burst size).
+ */
+public class TokenBucket {
+  private final double capacity;
+  private double ratePerSecond;
+  private double tokens;
+  private long lastRefillNanos;
+
+  public TokenBucket(double ratePerSecond, double capacity) {
+    this.ratePerSecond = ratePerSecond;
+    this.capacity = capacity;
+    this.tokens = capacity;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Take a token, waiting for it to become available if necessary.
+   *
+   * @return the time waited in milliseconds
+   */
+  public long acquire() {
+    long waitNanos = reserve();
+    if (waitNanos > 0) {
+      try {
+        Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return waitNanos / 1_000_000;
+  }
+
+  /**
+   * Take a token only if one is available right now.
+   *
+   * @return true if a token was taken
+   */
+  public synchronized boolean tryAcquire() {
+    refill();
+    if (tokens >= 1) {
+      tokens -= 1;
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized long reserve() {
+    refill();
+    tokens -= 1;
+    if (tokens >= 0) {
+      return 0;
+    }
+    return (long) (-tokens / ratePerSecond * 1_000_000_000L);
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * ratePerSecond);
+    lastRefillNanos = now;
+  }
+
+  public synchronized double getRatePerSecond() {
+    return ratePerSecond;
+  }
+
+  public synchronized void setRatePerSecond(double ratePerSecond) {
+    refill();
+    this.ratePerSecond = ratePerSecond;
+  }
+
+  public synchronized double getAvailableTokens() {
+    refill();
+    return tokens;
+  }
+}
@@ -0,0 +1,84 @@
+package spotify.setlist.ws;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import spotify.setlist.data.ConversionKey;
+import spotify.setlist.data.SetlistCreationResponse;
+import spotify.setlist.util.ConversionProgress;
+import spotify.setlist.util.StatsProvider;
+
+/**
+ * Makes sure that identical conversions (same setlist, same options) only ever run once at the same time.
+ * Any request that arrives while the same conversion is already running simply attaches to it,
+ * receives its progress messages, and gets the very same result.
+ */
+@Component
+public class ConversionCoalescer implements StatsProvider {
+  private final Map<ConversionKey, InFlightConversion> inFlightConversions;
+  private final AtomicLong startedConversions;
+  private final AtomicLong coalescedConversions;
+
+  ConversionCoalescer() {
+    this.inFlightConversions = new ConcurrentHashMap<>();
+    this.startedConversions = new AtomicLong();
+    this.coalescedConversions = new AtomicLong();
+  }
+
+  /**
+   * Start the given conversion, or attach to the identical one that's already running.
+   *
+   * @param conversionKey the setlist.fm ID and options
+   * @param session the websocket session that requested the conversion
+   * @param conversionStarter starts the actual conversion, only called if there's no identical one running
+   * @return a future with the result of the conversion
+   */
+  public CompletableFuture<SetlistCreationResponse> convert(ConversionKey conversionKey, WebSocketSession session,
+      Function<ConversionProgress, CompletableFuture<SetlistCreationResponse>> conversionStarter) {
+    InFlightConversion newConversion = new InFlightConversion();
+    InFlightConversion runningConversion = inFlightConversions.putIfAbsent(conversionKey, newConversion);
+    if (runningConversion != null) {
+      coalescedConversions.incrementAndGet();
+      runningConversion.progress.attach(session);
+      return runningConversion.result;
+    }
+
+    startedConversions.incrementAndGet();
+    newConversion.progress.attach(session);
+    conversionStarter.apply(newConversion.progress).whenComplete((setlistCreationResponse, e) -> {
+      inFlightConversions.remove(conversionKey, newConversion);
+      if (e != null) {
+        newConversion.result.completeExceptionally(e);
+      } else {
+        newConversion.result.complete(setlistCreationResponse);
+      }
+    });
+    return newConversion.result;
+  }
+
+  @Override
+  public String getStatsName() {
+    return "conversionCoalescer";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("inFlight", inFlightConversions.size());
+    stats.put("started", startedConversions.get());
+    stats.put("coalesced", coalescedConversions.get());
+    return stats;
+  }
+
+  private static class InFlightConversion {
+    private final CompletableFuture<SetlistCreationResponse> result = new CompletableFuture<>();
+    private final ConversionProgress progress = new ConversionProgress();
+  }
+}
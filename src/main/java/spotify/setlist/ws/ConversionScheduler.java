@@ -0,0 +1,207 @@
+package spotify.setlist.ws;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import spotify.setlist.data.SetlistCreationResponse;
+import spotify.setlist.util.ConversionProgress;
+import spotify.setlist.util.StatsProvider;
+import spotify.util.SpotifyLogger;
+
+/**
+ * Runs conversions on a fixed pool of workers behind a bounded queue, so that websocket handler threads
+ * never have to block while waiting for a free slot. Queued requests are kept up to date about their
+ * position in the queue and the estimated waiting time.
+ */
+@Component
+public class ConversionScheduler implements StatsProvider {
+  private static final String MAX_CONCURRENT_REQUESTS_ENV = "setlist_bot.max_concurrent_requests";
+  private static final String MAX_QUEUED_REQUESTS_ENV = "setlist_bot.max_queued_requests";
+  private static final String VIRTUAL_THREADS_ENV = "setlist_bot.virtual_threads";
+  private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 3;
+  private static final int DEFAULT_MAX_QUEUED_REQUESTS = 100;
+
+  /**
+   * Initial guess for the service time of a conversion, until the first conversions have finished
+   */
+  private static final long INITIAL_SERVICE_TIME_ESTIMATE_MS = 10000;
+  private static final double SERVICE_TIME_SMOOTHING = 0.2;
+
+  private final ThreadPoolExecutor executor;
+  private final int workers;
+  private final SpotifyLogger logger;
+
+  private final AtomicLong completed;
+  private final AtomicLong rejected;
+  private final AtomicLong totalWaitMillis;
+  private final AtomicLong maxWaitMillis;
+  private final AtomicLong totalServiceMillis;
+  private volatile double serviceTimeEstimateMillis;
+
+  ConversionScheduler(Environment environment, SpotifyLogger logger) {
+    this.logger = logger;
+    this.workers = environment.getProperty(MAX_CONCURRENT_REQUESTS_ENV, Integer.class, DEFAULT_MAX_CONCURRENT_REQUESTS);
+    int maxQueuedRequests = environment.getProperty(MAX_QUEUED_REQUESTS_ENV, Integer.class, DEFAULT_MAX_QUEUED_REQUESTS);
+    boolean virtualThreads = "true".equals(environment.getProperty(VIRTUAL_THREADS_ENV));
+
+    this.completed = new AtomicLong();
+    this.rejected = new AtomicLong();
+    this.totalWaitMillis = new AtomicLong();
+    this.maxWaitMillis = new AtomicLong();
+    this.totalServiceMillis = new AtomicLong();
+    this.serviceTimeEstimateMillis = INITIAL_SERVICE_TIME_ESTIMATE_MS;
+
+    this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+      new LinkedBlockingQueue<>(maxQueuedRequests), createThreadFactory(virtualThreads)) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        ((ConversionJob) r).markStarted();
+        sendQueuePositions();
+      }
+    };
+  }
+
+  /**
+   * Queue the given conversion.
+   *
+   * @param progress the receiver of progress messages (including queue updates)
+   * @param conversionTask the actual conversion
+   * @return a future that completes once the conversion is done, or exceptionally if the queue is full
+   */
+  public CompletableFuture<SetlistCreationResponse> submit(ConversionProgress progress, ConversionTask conversionTask) {
+    ConversionJob conversionJob = new ConversionJob(progress, conversionTask);
+    try {
+      executor.execute(conversionJob);
+      sendQueuePositions();
+    } catch (RejectedExecutionException e) {
+      rejected.incrementAndGet();
+      progress.send("Too many requests right now, please try again in a few minutes.");
+      conversionJob.result.completeExceptionally(e);
+    }
+    return conversionJob.result;
+  }
+
+  private void sendQueuePositions() {
+    List<Runnable> queuedJobs = new ArrayList<>(executor.getQueue());
+    for (int i = 0; i < queuedJobs.size(); i++) {
+      ((ConversionJob) queuedJobs.get(i)).sendQueuePosition(i + 1);
+    }
+  }
+
+  private long estimateWaitSeconds(int queuePosition) {
+    int roundsToWait = (queuePosition + workers - 1) / workers;
+    return Math.round(roundsToWait * serviceTimeEstimateMillis / 1000);
+  }
+
+  private void recordCompletion(long waitMillis, long serviceMillis) {
+    completed.incrementAndGet();
+    totalWaitMillis.addAndGet(waitMillis);
+    maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+    totalServiceMillis.addAndGet(serviceMillis);
+    serviceTimeEstimateMillis = SERVICE_TIME_SMOOTHING * serviceMillis + (1 - SERVICE_TIME_SMOOTHING) * serviceTimeEstimateMillis;
+  }
+
+  private ThreadFactory createThreadFactory(boolean virtualThreads) {
+    if (virtualThreads) {
+      // Virtual threads are only available from Java 21 onwards, hence the reflection
+      try {
+        Object virtualThreadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+        Object factory = Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(virtualThreadBuilder);
+        logger.info("Using virtual threads for conversions");
+        return (ThreadFactory) factory;
+      } catch (ReflectiveOperationException e) {
+        logger.warning("Virtual threads aren't supported by this JVM, falling back to platform threads");
+      }
+    }
+    AtomicInteger threadCounter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, "conversion-worker-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public String getStatsName() {
+    return "conversionScheduler";
+  }
+
+  @Override
+  public Map<String, Object> getStats() {
+    long completedCount = completed.get();
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("workers", workers);
+    stats.put("activeWorkers", executor.getActiveCount());
+    stats.put("queueDepth", executor.getQueue().size());
+    stats.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+    stats.put("completed", completedCount);
+    stats.put("rejected", rejected.get());
+    stats.put("avgWaitMillis", completedCount > 0 ? totalWaitMillis.get() / completedCount : 0);
+    stats.put("maxWaitMillis", maxWaitMillis.get());
+    stats.put("avgServiceMillis", completedCount > 0 ? totalServiceMillis.get() / completedCount : 0);
+    stats.put("serviceTimeEstimateMillis", Math.round(serviceTimeEstimateMillis));
+    return stats;
+  }
+
+  @FunctionalInterface
+  public interface ConversionTask {
+    SetlistCreationResponse run(ConversionProgress progress) throws Exception;
+  }
+
+  private class ConversionJob implements Runnable {
+    private final ConversionProgress progress;
+    private final ConversionTask conversionTask;
+    private final CompletableFuture<SetlistCreationResponse> result;
+    private final long queuedAt;
+    private volatile long startedAt;
+
+    ConversionJob(ConversionProgress progress, ConversionTask conversionTask) {
+      this.progress = progress;
+      this.conversionTask = conversionTask;
+      this.result = new CompletableFuture<>();
+      this.queuedAt = System.currentTimeMillis();
+    }
+
+    void markStarted() {
+      startedAt = System.currentTimeMillis();
+    }
+
+    void sendQueuePosition(int queuePosition) {
+      if (startedAt == 0) {
+        progress.send(String.format("Queued... (position %d, ~%ds)", queuePosition, estimateWaitSeconds(queuePosition)));
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        result.complete(conversionTask.run(progress));
+      } catch (Exception e) {
+        result.completeExceptionally(e);
+      } finally {
+        recordCompletion(startedAt - queuedAt, System.currentTimeMillis() - startedAt);
+      }
+    }
+  }
+}
@@ -1,7 +1,7 @@
 package spotify.setlist.ws;
 
 import java.io.IOException;
-import java.util.concurrent.Semaphore;
+import java.util.Optional;
 
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.TextMessage;
@@ -14,6 +14,7 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import spotify.setlist.creator.SetlistCreator;
+import spotify.setlist.data.ConversionKey;
 import spotify.setlist.data.SetlistCreationOptions;
 import spotify.setlist.data.SetlistCreationResponse;
 import spotify.setlist.util.SetlistUtils;
@@ -21,14 +22,15 @@ import spotify.setlist.util.SetlistUtils;
 @Component
 @EnableWebSocket
 public class SetlistControllerWebsocket implements WebSocketConfigurer {
-  private static final int MAX_CONCURRENT_REQUESTS = 3;
   private final SetlistCreator setlistCreator;
-  private final Semaphore semaphore;
+  private final ConversionCoalescer conversionCoalescer;
+  private final ConversionScheduler conversionScheduler;
   private final ObjectMapper objectMapper;
 
-  SetlistControllerWebsocket(SetlistCreator setlistCreator) {
+  SetlistControllerWebsocket(SetlistCreator setlistCreator, ConversionCoalescer conversionCoalescer, ConversionScheduler conversionScheduler) {
     this.setlistCreator = setlistCreator;
-    this.semaphore = new Semaphore(MAX_CONCURRENT_REQUESTS);
+    this.conversionCoalescer = conversionCoalescer;
+    this.conversionScheduler = conversionScheduler;
     this.objectMapper = new ObjectMapper();
   }
 
@@ -37,26 +39,48 @@ public class SetlistControllerWebsocket implements WebSocketConfigurer {
     registry.addHandler(new ConvertWsHandler(), "/convert-ws").setAllowedOrigins("*");
   }
 
-  private void handle(WebSocketSession session, String payload) throws IOException {
+  private void handle(WebSocketSession session, String payload) {
     try {
       WsConversionRequest wsConversionRequest = objectMapper.readValue(payload, WsConversionRequest.class);
       String setlistFmId = SetlistUtils.getIdFromSetlistFmUrl(wsConversionRequest.getUrl());
       SetlistCreationOptions options = SetlistUtils.getOptionsFromUrl(wsConversionRequest.getOptions());
 
-      SetlistUtils.attemptSendMessage(session, "Queued...");
-      semaphore.acquire();
-      // TODO: block and wait here while housekeeping is ongoing
-
-      SetlistCreationResponse setlistCreationResponse = setlistCreator.convertSetlistToPlaylist(setlistFmId, options, session);
+      // Recently converted setlists are answered right away, without queueing behind the actual conversions
+      Optional<SetlistCreationResponse> cachedConversion = setlistCreator.getCachedConversion(setlistFmId, options);
+      if (cachedConversion.isPresent()) {
+        sendResultAndClose(session, cachedConversion.get(), null);
+        return;
+      }
 
-      String s = objectMapper.writeValueAsString(setlistCreationResponse);
-      SetlistUtils.attemptSendMessage(session, s);
+      // Identical requests that arrive while the conversion is still running are attached to it instead.
+      // The conversion itself runs on the scheduler, so this handler thread is released immediately.
+      // No need to wait for housekeeping either, the creation cache is only ever swapped out once it has been fully rebuilt.
+      ConversionKey conversionKey = new ConversionKey(setlistFmId, options);
+      conversionCoalescer.convert(conversionKey, session, progress -> conversionScheduler.submit(progress,
+          p -> setlistCreator.convertSetlistToPlaylist(setlistFmId, options, p)))
+        .whenComplete((setlistCreationResponse, e) -> sendResultAndClose(session, setlistCreationResponse, e));
     } catch (Exception e) {
+      sendResultAndClose(session, null, e);
+    }
+  }
+
+  private void sendResultAndClose(WebSocketSession session, SetlistCreationResponse setlistCreationResponse, Throwable error) {
+    try {
+      if (error == null) {
+        String s = objectMapper.writeValueAsString(setlistCreationResponse);
+        SetlistUtils.attemptSendMessage(session, s);
+      } else {
+        SetlistUtils.attemptSendMessage(session, "ERROR");
+      }
+    } catch (IOException e) {
       SetlistUtils.attemptSendMessage(session, "ERROR");
     } finally {
-      semaphore.release();
-      if (session.isOpen()) {
-        session.close();
+      try {
+        if (session.isOpen()) {
+          session.close();
+        }
+      } catch (IOException e) {
+        // Session is gone either way
       }
     }
   }
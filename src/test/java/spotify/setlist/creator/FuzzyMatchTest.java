@@ -0,0 +1,82 @@
+package spotify.setlist.creator;
+
+import java.util.Random;
+
+import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.junit.Assert;
+import org.junit.Test;
+
+import spotify.setlist.util.FuzzyMatcher;
+
+public class FuzzyMatchTest {
+
+  private void testWithinDistance(String a, String b, int maxDistance, boolean expected) {
+    Assert.assertEquals(a + " <-> " + b + " (" + maxDistance + ")", expected, FuzzyMatcher.isWithinDistance(a, b, maxDistance));
+  }
+
+  ///////////////////////////////
+
+  @Test
+  public void fuzzyMatchTest_Basic() {
+    testWithinDistance("paranoid", "paranoid", 0, true);
+    testWithinDistance("paranoid", "paranoia", 1, true);
+    testWithinDistance("paranoid", "paranoia", 0, false);
+    testWithinDistance("kitten", "sitting", 3, true);
+    testWithinDistance("kitten", "sitting", 2, false);
+    testWithinDistance("", "", 0, true);
+    testWithinDistance("abc", "", 3, true);
+    testWithinDistance("abc", "", 2, false);
+  }
+
+  @Test
+  public void fuzzyMatchTest_ObviousMismatches() {
+    testWithinDistance("the number of the beast", "run to the hills", 5, false);
+    testWithinDistance("fear of the dark", "afraid to shoot strangers", 4, false);
+    testWithinDistance("aces high", "aces high live", 2, false);
+  }
+
+  @Test
+  public void fuzzyMatchTest_SameAsLevenshteinDistance() {
+    LevenshteinDistance levenshteinDistance = new LevenshteinDistance();
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      String a = randomString(random);
+      String b = random.nextBoolean() ? mutate(random, a) : randomString(random);
+      int maxDistance = random.nextInt(6);
+      boolean expected = levenshteinDistance.apply(a, b) <= maxDistance;
+      testWithinDistance(a, b, maxDistance, expected);
+    }
+  }
+
+  private String randomString(Random random) {
+    StringBuilder sb = new StringBuilder();
+    int length = random.nextInt(25);
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('a' + random.nextInt(5)));
+    }
+    return sb.toString();
+  }
+
+  private String mutate(Random random, String s) {
+    StringBuilder sb = new StringBuilder(s);
+    int edits = random.nextInt(5);
+    for (int i = 0; i < edits; i++) {
+      int position = sb.length() > 0 ? random.nextInt(sb.length()) : 0;
+      switch (random.nextInt(3)) {
+        case 0:
+          sb.insert(position, (char) ('a' + random.nextInt(5)));
+          break;
+        case 1:
+          if (sb.length() > 0) {
+            sb.deleteCharAt(position);
+          }
+          break;
+        default:
+          if (sb.length() > 0) {
+            sb.setCharAt(position, (char) ('a' + random.nextInt(5)));
+          }
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -95,5 +95,37 @@ public class PurificationTest {
     testPurified("łódź", "lodz");
     testPurified("đorđe", "dorde");
   }
-}
 
+  @Test
+  public void purifySongTitleTest_AsciiPunctuationAndDigits() {
+    testPurified("Don't Stop Me Now (Live at Wembley '86)", "don t stop me now live at wembley 86");
+    testPurified("...And Justice for All", "and justice for all");
+    testPurified("Song #2 - Remastered 2011", "song 2 remastered 2011");
+    testPurified("ALL CAPS", "all caps");
+    testPurified("", "");
+  }
+
+  @Test
+  public void purifySongTitleTest_DecomposedAndCompatibilityCharacters() {
+    testPurified("cafe\u0301", "cafe");
+    testPurified("cafe\u0301 au lait", "cafe au lait");
+    testPurified("\ufb01ne", "fine");
+    testPurified("\uff21\uff22\uff23", "abc");
+    testPurified("track \u2460", "track 1");
+  }
+
+  @Test
+  public void coreTitleTest() {
+    Assert.assertEquals("Breaking the Law", SetlistUtils.extractCoreTitle("Intro: Breaking the Law", false));
+    Assert.assertEquals("breaking the law", SetlistUtils.extractCoreTitle("Intro - Breaking the Law (Live)", true));
+    Assert.assertEquals("Short", SetlistUtils.extractCoreTitle("Short", false));
+  }
+
+  @Test
+  public void pureTextTest() {
+    Assert.assertTrue(SetlistUtils.isPureText("Iron Maiden", "The Trooper"));
+    Assert.assertFalse(SetlistUtils.isPureText("Mot\u00f6rhead", "Ace of Spades"));
+    Assert.assertFalse(SetlistUtils.isPureText("AC/DC"));
+    Assert.assertFalse(SetlistUtils.isPureText(""));
+  }
+}
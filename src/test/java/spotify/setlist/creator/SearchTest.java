@@ -21,10 +21,22 @@ import spotify.api.events.SpotifyApiException;
 import spotify.config.SpotifyApiConfig;
 import spotify.services.PlaylistService;
 import spotify.services.UserService;
+import spotify.setlist.creator.matching.SearchQueryPlanner;
+import spotify.setlist.creator.matching.TrackMatcher;
+import spotify.setlist.creator.misc.ArtistCatalog;
+import spotify.setlist.creator.misc.ArtistIdentityCache;
+import spotify.setlist.creator.misc.ConversionResultCache;
+import spotify.setlist.creator.misc.ConversionStageTimer;
 import spotify.setlist.creator.misc.CounterManager;
 import spotify.setlist.creator.misc.CreationCache;
+import spotify.setlist.creator.misc.RetryPolicy;
+import spotify.setlist.creator.misc.SpotifyRateLimiter;
+import spotify.setlist.creator.misc.TrackSearchCache;
 import spotify.setlist.data.Setlist;
 import spotify.setlist.data.TrackSearchResult;
+import spotify.setlist.setlistfm.SetlistFmApi;
+import spotify.setlist.setlistfm.SetlistFmHttpClient;
+import spotify.setlist.setlistfm.SetlistFmRequestGovernor;
 import spotify.setlist.util.SetlistUtils;
 import spotify.spring.SpringPortConfig;
 import spotify.util.SpotifyLogger;
@@ -42,6 +54,18 @@ import spotify.util.SpotifyOptimizedExecutorService;
   SetlistCreator.class,
   CreationCache.class,
   CounterManager.class,
+  TrackSearchCache.class,
+  ConversionResultCache.class,
+  ConversionStageTimer.class,
+  SpotifyRateLimiter.class,
+  RetryPolicy.class,
+  TrackMatcher.class,
+  SearchQueryPlanner.class,
+  ArtistCatalog.class,
+  ArtistIdentityCache.class,
+  SetlistFmApi.class,
+  SetlistFmHttpClient.class,
+  SetlistFmRequestGovernor.class,
   SetlistFmToSpotifyPlaylist.SetlistFmBotSpotifySettings.class
 })
 @EnableConfigurationProperties
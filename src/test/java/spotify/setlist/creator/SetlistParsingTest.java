@@ -0,0 +1,95 @@
+package spotify.setlist.creator;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Objects;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import spotify.setlist.data.Setlist;
+import spotify.setlist.setlistfm.SetlistFmParser;
+
+public class SetlistParsingTest {
+
+  private Setlist parse(String fileName) throws IOException {
+    String path = "/setlistfm/" + fileName;
+    try (Reader reader = new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream(path)), StandardCharsets.UTF_8)) {
+      return SetlistFmParser.parse(reader, path);
+    }
+  }
+
+  private void assertSong(Setlist.Song song, int index, String songName, String originalArtistName, boolean tape, boolean cover, boolean medleyPart) {
+    Assert.assertEquals(index, song.getIndex());
+    Assert.assertEquals(songName, song.getSongName());
+    Assert.assertEquals(originalArtistName, song.getOriginalArtistName());
+    Assert.assertEquals(songName + " (tape)", tape, song.isTape());
+    Assert.assertEquals(songName + " (cover)", cover, song.isCover());
+    Assert.assertEquals(songName + " (medley)", medleyPart, song.isMedleyPart());
+  }
+
+  ///////////////////////////////
+
+  @Test
+  public void parseSetlistTest_Metadata() throws IOException {
+    Setlist setlist = parse("iron-maiden-2023.json");
+    Assert.assertEquals("Iron Maiden", setlist.getArtistName());
+    Assert.assertEquals("ca891d65-d9b0-4258-89f7-e6ba29d83767", setlist.getArtistMbid());
+    Assert.assertEquals(LocalDate.of(2023, 6, 24), setlist.getEventDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+    Assert.assertEquals("Berlin, Germany", setlist.getCity());
+    Assert.assertEquals("Olympiastadion", setlist.getVenue());
+    Assert.assertEquals("The Future Past Tour", setlist.getTourName());
+  }
+
+  @Test
+  public void parseSetlistTest_TapesCoversMedleys() throws IOException {
+    List<Setlist.Song> songs = parse("iron-maiden-2023.json").getSongs();
+    Assert.assertEquals(11, songs.size());
+
+    assertSong(songs.get(0), 1, "Doctor Doctor", "UFO", true, true, false);
+    Assert.assertEquals("3d2b98e5-556f-4451-a3ff-c50ea18d57cb", songs.get(0).getOriginalArtistMbid());
+    assertSong(songs.get(1), 2, "Caught Somewhere in Time", "Iron Maiden", false, false, false);
+    Assert.assertEquals("Live debut", songs.get(2).getInfo());
+
+    // Encore continues the numbering, medley parts share their index
+    assertSong(songs.get(6), 7, "Hell on Earth", "Iron Maiden", false, false, false);
+    assertSong(songs.get(7), 8, "Heaven Can Wait", "Iron Maiden", false, false, true);
+    assertSong(songs.get(8), 8, "Run to the Hills", "Iron Maiden", false, false, true);
+    assertSong(songs.get(9), 9, "Cross-Eyed Mary", "Jethro Tull", false, true, false);
+    assertSong(songs.get(10), 10, "Always Look on the Bright Side of Life", "Monty Python", true, true, false);
+
+    for (Setlist.Song song : songs) {
+      Assert.assertEquals("Iron Maiden", song.getArtistName());
+      Assert.assertEquals("ca891d65-d9b0-4258-89f7-e6ba29d83767", song.getArtistMbid());
+    }
+  }
+
+  @Test
+  public void parseSetlistTest_OptionalFields() throws IOException {
+    Setlist setlist = parse("local-band-without-tour.json");
+    Assert.assertEquals("Die Ärzte", setlist.getArtistName());
+    Assert.assertNull(setlist.getArtistMbid());
+    Assert.assertEquals("", setlist.getTourName());
+    Assert.assertEquals("Bochum, Germany", setlist.getCity());
+
+    List<Setlist.Song> songs = setlist.getSongs();
+    Assert.assertEquals(3, songs.size());
+    assertSong(songs.get(0), 1, "[Generic Track]", "Die Ärzte", false, false, false);
+    Assert.assertEquals("", songs.get(2).getInfo());
+  }
+
+  @Test
+  public void parseSetlistTest_Empty() throws IOException {
+    try {
+      parse("empty-setlist.json");
+      Assert.fail("Empty setlists must be rejected");
+    } catch (IllegalStateException e) {
+      Assert.assertTrue(e.getMessage().contains("empty"));
+    }
+  }
+}
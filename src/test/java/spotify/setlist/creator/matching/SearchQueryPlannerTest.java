@@ -0,0 +1,97 @@
+package spotify.setlist.creator.matching;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import se.michaelthelin.spotify.enums.AlbumType;
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+public class SearchQueryPlannerTest {
+  private static final TrackMatcher.MatchTier TARGET_TIER = TrackMatcher.MatchTier.ALBUM_EXACT;
+
+  private final TrackMatcher trackMatcher = new TrackMatcher();
+  private final SongQuery songQuery = new SongQuery("The Trooper", "Iron Maiden");
+
+  private static Track track(String id, String name, String artistName, AlbumType albumType, String releaseDate) {
+    ArtistSimplified artist = new ArtistSimplified.Builder()
+      .setId(artistName.toLowerCase().replace(' ', '-'))
+      .setName(artistName)
+      .build();
+    AlbumSimplified album = new AlbumSimplified.Builder()
+      .setId("album-" + id)
+      .setName(artistName + " " + releaseDate)
+      .setAlbumType(albumType)
+      .setArtists(artist)
+      .setReleaseDate(releaseDate)
+      .build();
+    return new Track.Builder()
+      .setId(id)
+      .setName(name)
+      .setArtists(artist)
+      .setAlbum(album)
+      .build();
+  }
+
+  private static List<Track> fillPage(List<Track> tracks) {
+    List<Track> page = new ArrayList<>(tracks);
+    for (int i = page.size(); i < SearchQueryPlanner.SEARCH_PAGE_SIZE; i++) {
+      page.add(track("filler-" + i, "Other Song " + i, "Iron Maiden", AlbumType.ALBUM, "1990-01-01"));
+    }
+    return page;
+  }
+
+  private TrackMatcher.Match match(List<Track> tracks) {
+    return trackMatcher.match(songQuery, TrackCandidate.of(tracks));
+  }
+
+  private TrackMatcher.Match matchMerged(List<Track> strictTracks, List<Track> looseTracks) {
+    List<Track> merged = new ArrayList<>(strictTracks);
+    merged.addAll(looseTracks);
+    return match(merged);
+  }
+
+  ///////////////////////////////
+
+  @Test
+  public void strictQuerySkippedTest_CompleteLoosePage() {
+    Track remaster = track("remaster", "The Trooper", "Iron Maiden", AlbumType.ALBUM, "2015-05-01");
+    Track original = track("original", "The Trooper", "Iron Maiden", AlbumType.ALBUM, "1983-05-16");
+    List<Track> looseTracks = List.of(remaster, original, track("live", "The Trooper - Live", "Iron Maiden", AlbumType.ALBUM, "1985-10-14"));
+    List<Track> strictTracks = List.of(original, remaster);
+
+    TrackMatcher.Match looseMatch = match(looseTracks);
+    Assert.assertTrue(SearchQueryPlanner.isLooseSearchConclusive(looseMatch, looseTracks.size(), TARGET_TIER));
+
+    // Skipping the strict query picks the very same track as the merged results would have
+    Assert.assertSame(matchMerged(strictTracks, looseTracks).getCandidate().getTrack(), looseMatch.getCandidate().getTrack());
+    Assert.assertEquals("original", looseMatch.getCandidate().getTrack().getId());
+  }
+
+  @Test
+  public void strictQuerySentTest_FullLoosePage() {
+    // The loose page is full, so the original release may have been cut off and only show up in the strict results
+    Track remaster = track("remaster", "The Trooper", "Iron Maiden", AlbumType.ALBUM, "2015-05-01");
+    Track original = track("original", "The Trooper", "Iron Maiden", AlbumType.ALBUM, "1983-05-16");
+    List<Track> looseTracks = fillPage(List.of(remaster));
+    List<Track> strictTracks = List.of(original);
+
+    TrackMatcher.Match looseMatch = match(looseTracks);
+    Assert.assertTrue(looseMatch.isAtLeast(TARGET_TIER));
+    Assert.assertFalse(SearchQueryPlanner.isLooseSearchConclusive(looseMatch, looseTracks.size(), TARGET_TIER));
+    Assert.assertEquals("original", matchMerged(strictTracks, looseTracks).getCandidate().getTrack().getId());
+  }
+
+  @Test
+  public void strictQuerySentTest_NoTargetTierMatch() {
+    List<Track> looseTracks = List.of(track("compilation", "The Trooper", "Iron Maiden", AlbumType.COMPILATION, "1996-10-23"));
+
+    TrackMatcher.Match looseMatch = match(looseTracks);
+    Assert.assertTrue(looseMatch.hasMatch());
+    Assert.assertFalse(SearchQueryPlanner.isLooseSearchConclusive(looseMatch, looseTracks.size(), TARGET_TIER));
+  }
+}